@@ -27,11 +27,14 @@ MA 02111-1307, USA
 package visad.ardor3d;
 
 import visad.ardor3d.SwitchNode;
+import com.ardor3d.scenegraph.Spatial;
 import com.ardor3d.util.GameTaskQueue;
 import visad.*;
 
+import java.util.Collections;
 import java.util.Vector;
 import java.util.Enumeration;
+import java.util.WeakHashMap;
 import java.util.concurrent.Callable;
 
 /**
@@ -42,6 +45,12 @@ public abstract class AVControlA3D extends Control implements AVControl {
 
   transient Vector switches = new Vector();
 
+  /** frames whose build has completed, by identity; frames of discarded
+      transforms drop out with them */
+  private transient java.util.Set<Spatial> readyFrames =
+    Collections.synchronizedSet(
+      Collections.newSetFromMap(new WeakHashMap<Spatial, Boolean>()));
+
   private int interval = -1;
   
   private DisplayRendererA3D displayRenderer;
@@ -102,7 +111,10 @@ public abstract class AVControlA3D extends Control implements AVControl {
     if (value != value) return;
     double[][] fvalues = new double[1][1];
     fvalues[0][0] = value;
-    Enumeration pairs = ((Vector) switches.clone()).elements();
+    final Vector pairList = (Vector) switches.clone();
+    final int[] selected = new int[pairList.size()];
+    Enumeration pairs = pairList.elements();
+    int k = 0;
     while (pairs.hasMoreElements()) {
       SwitchSet ss = (SwitchSet) pairs.nextElement();
       Set set = ss.set;
@@ -148,31 +160,66 @@ public abstract class AVControlA3D extends Control implements AVControl {
         indices = new int[] {getIndexForRange(set, lower, upper)};
       }
       
-      Callable updateCallable = new Callable() {
-          public Object call() {
-             if (0 <= indices[0] && indices[0] < ss.swit.getNumberOfChildren()) {
-                ss.setWhichChild(indices[0]);
-             }
-             else {
-                ss.setWhichChild(VisADSwitch.NONE_VISIBLE);
-             }
-             return null;
-          }
-       };
-       GameTaskQueue uQueue = displayRenderer.getTaskQueueManager().getQueue(GameTaskQueue.UPDATE);
-       uQueue.enqueue(updateCallable);
-       
+      selected[k++] = indices[0];
+      
 //      if (0 <= indices[0] && indices[0] < ss.swit.getNumberOfChildren()) {
 //        ss.setWhichChild(indices[0]);
 //      }
 //      else {
 //        ss.setWhichChild(VisADSwitch.NONE_VISIBLE);
 //      }
-      displayRenderer.markNeedDraw();
       
     } // end while (pairs.hasMoreElements())
+
+    // one task for all switches, so a task budget can't split an
+    // animation step across renderers
+    Callable updateCallable = new Callable() {
+        public Object call() {
+           for (int i=0; i<selected.length; i++) {
+             SwitchSet ss = (SwitchSet) pairList.elementAt(i);
+             if (0 <= selected[i] && selected[i] < ss.swit.getNumberOfChildren()) {
+                ss.setWhichChild(selected[i]);
+             }
+             else {
+                ss.setWhichChild(VisADSwitch.NONE_VISIBLE);
+             }
+           }
+           return null;
+        }
+     };
+    GameTaskQueue uQueue = displayRenderer.getTaskQueueManager().getQueue(GameTaskQueue.UPDATE);
+    uQueue.enqueue(updateCallable);
+    displayRenderer.markNeedDraw();
   }
   
+  /** record whether the build of an animation frame has completed,
+      whether or not it drew anything */
+  void setFrameReady(Spatial frame, boolean ready) {
+    if (ready) {
+      readyFrames.add(frame);
+    }
+    else {
+      readyFrames.remove(frame);
+    }
+  }
+
+  /** show frame index of sw if its SwitchSet is holding for it;
+      called from the UPDATE queue once a progressively built
+      frame has been attached */
+  void frameReady(SwitchNode sw, int index) {
+    if (0 <= index && index < sw.getNumberOfChildren()) {
+      setFrameReady(sw.getChild(index), true);
+    }
+    Enumeration pairs = ((Vector) switches.clone()).elements();
+    while (pairs.hasMoreElements()) {
+      SwitchSet ss = (SwitchSet) pairs.nextElement();
+      if (ss.swit == sw && ss.pending == index) {
+        ss.setWhichChild(index);
+      }
+    }
+    displayRenderer.markNeedDraw();
+  }
+
   /** clear all 'pairs' in switches that involve re */
   public void clearSwitches(DataRenderer re) {
     Enumeration pairs = ((Vector) switches.clone()).elements();
@@ -222,6 +269,9 @@ public abstract class AVControlA3D extends Control implements AVControl {
     DataRenderer renderer;
     AVHandler handler;
 
+    /** frame selected but not yet built, or -1 */
+    int pending = -1;
+
     SwitchSet(SwitchNode sw, Set se, DataRenderer re) {
       swit = sw;
       set = se;
@@ -238,10 +288,21 @@ public abstract class AVControlA3D extends Control implements AVControl {
     void setWhichChild(int idx) {
       if (handler == null) {
         if (swit.getNumberOfChildren() > 0) {
+          FrameResidencyA3D residency = getFrameResidency();
+          if (residency != null && VisADSwitch.NONE_VISIBLE != idx) {
+            residency.frameSelected(swit, idx);
+          }
           if (VisADSwitch.NONE_VISIBLE == idx) {
+            pending = -1;
             swit.setAllNonVisible();
           }
+          else if ((isProgressive() || residency != null) &&
+                   !isFrameReady(idx)) {
+            // hold on the current frame until this one is built
+            pending = idx;
+          }
           else {
+            pending = -1;
             swit.setSingleVisible(idx);
           }
         }
@@ -250,6 +311,22 @@ public abstract class AVControlA3D extends Control implements AVControl {
         handler.setWhichChild(idx);
       }       
     }
+
+    boolean isProgressive() {
+      return (renderer instanceof DefaultRendererA3D) &&
+             ((DefaultRendererA3D) renderer).getProgressiveAnimation();
+    }
+
+    FrameResidencyA3D getFrameResidency() {
+      return (renderer instanceof AnimationRendererA3D) ?
+             ((AnimationRendererA3D) renderer).getFrameResidency() : null;
+    }
+
+    /** true once frame idx has been built, even if it is empty */
+    boolean isFrameReady(int idx) {
+      return idx < swit.getNumberOfChildren() &&
+             readyFrames.contains(swit.getChild(idx));
+    }
   }
 
 }
@@ -33,11 +33,14 @@ import java.util.StringTokenizer;
 import visad.AnimationControl;
 import visad.AnimationSetControl;
 import visad.Control;
+import visad.CoordinateSystem;
 import visad.DataDisplayLink;
 import visad.DataRenderer;
 import visad.DisplayException;
+import visad.RealTupleType;
 import visad.RealType;
 import visad.Set;
+import visad.SetType;
 import visad.ToggleControl;
 import visad.VisADException;
 import visad.browser.Convert;
@@ -275,6 +278,42 @@ public class AnimationControlA3D extends AVControlA3D
     }
   }
 
+  /**
+   * Return the indices of a renderer's animation domain Set in the order
+   * its frames should be built progressively: the frame matching the
+   * current step first, then the others by their distance from it in the
+   * play direction (wrapping around, as playback does).
+   *
+   * @param  frames  animation domain Set of a DataRenderer
+   * @return indices into frames
+   * @throws  VisADException  Couldn't convert the current value to frames
+   */
+  public int[] getFrameBuildOrder(Set frames) throws VisADException {
+    int len = frames.getLength();
+    int start = 0;
+    Set set = getSet();
+    if (set != null && len > 1) {
+      double value = animationSet.getValue(current);
+      if (value == value) {
+        RealTupleType out = ((SetType) frames.getType()).getDomain();
+        RealTupleType in = ((SetType) set.getType()).getDomain();
+        double[][] values = CoordinateSystem.transformCoordinates(
+                             out, frames.getCoordinateSystem(),
+                             frames.getSetUnits(), null /* errors */,
+                             in, set.getCoordinateSystem(),
+                             set.getSetUnits(), null /* errors */,
+                             new double[][] {{value}});
+        int index = frames.doubleToIndex(values)[0];
+        if (0 <= index && index < len) start = index;
+      }
+    }
+    int[] order = new int[len];
+    for (int k=0; k<len; k++) {
+      order[k] = direction ? (start + k) % len : (start - k + len) % len;
+    }
+    return order;
+  }
+
   public Set getSet() {
     if (animationSet != null) {
       return animationSet.getSet();
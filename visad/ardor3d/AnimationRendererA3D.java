@@ -45,6 +45,12 @@ public class AnimationRendererA3D extends DefaultRendererA3D {
 
   private boolean setSetOnReUseFrames = true;
 
+  private FrameResidencyA3D residency = null;
+
+  // serializes use of the shadow tree by doTransform and by the
+  // background re-transforms of FrameResidencyA3D
+  final Object transformLock = new Object();
+
   public ShadowType makeShadowFunctionType(
          FunctionType type, DataDisplayLink link, ShadowType parent)
          throws VisADException, RemoteException {
@@ -71,11 +77,32 @@ public class AnimationRendererA3D extends DefaultRendererA3D {
     return setSetOnReUseFrames;
   }
 
+  /**
+   * Limit the frames of this renderer's animation that stay resident in
+   * the scene graph.  Frames far from the current step are released and
+   * re-transformed in the background as playback approaches them.
+   *
+   * @param maxFrames maximum resident frames, or &lt;= 0 to keep all frames
+   * @param maxBytes  maximum resident bytes, or &lt;= 0 for no byte limit
+   */
+  public void setFrameResidency(int maxFrames, long maxBytes) {
+    if (residency != null) residency.clear();
+    residency = (maxFrames > 0) ?
+      new FrameResidencyA3D(this, maxFrames, maxBytes) : null;
+  }
+
+  /** return the FrameResidencyA3D (with its hit-rate and rebuild
+      statistics) or null if all frames are kept resident */
+  public FrameResidencyA3D getFrameResidency() {
+    return residency;
+  }
+
   // logic to 'mark' missing frames
   private VisADNodeA3D vbranch = null;
 
   public void clearScene() {
     vbranch = null;
+    if (residency != null) residency.clear();
     super.clearScene();
   }
 
@@ -89,6 +116,12 @@ public class AnimationRendererA3D extends DefaultRendererA3D {
   // end of logic to 'mark' missing frames
 
   public Node doTransform() throws VisADException, RemoteException {
+    synchronized (transformLock) {
+      return transform();
+    }
+  }
+
+  private Node transform() throws VisADException, RemoteException {
     Node branch = getBranch();
     if (branch == null) {
       branch = new Node();
@@ -1,8 +1,10 @@
 package visad.ardor3d;
 
+import com.ardor3d.framework.Canvas;
 import com.ardor3d.framework.FrameHandler;
 import com.ardor3d.input.logical.LogicalLayer;
 import com.ardor3d.util.Timer;
+import java.awt.Component;
 
 /**
  * Only one of these per JVM (suggestion by J.Gouessej of Jogamp).
@@ -20,8 +22,9 @@ public class Ardor3D {
    private Ardor3D() {
       timer = new Timer();
       frameHandler = new FrameHandler(timer);
-      runner = new RunnerA3D(frameHandler);
       logicalLayer = new LogicalLayer();
+      runner = new RunnerA3D(frameHandler, logicalLayer);
+      runner.setRenderOnDemand(!"false".equals(System.getProperty("visad.ardor3d.renderOnDemand")));
    }
    
    public static Ardor3D getInstance() {
@@ -52,4 +55,44 @@ public class Ardor3D {
        runner.toggle(on);
    }
    
+   /**
+    * When on (the default), canvases are only redrawn after their display
+    * called markNeedDraw, e.g. when a task was enqueued, the transform
+    * changed, the animation stepped or the canvas was resized. Set the
+    * system property visad.ardor3d.renderOnDemand=false to redraw
+    * continuously.
+    */
+   public static void setRenderOnDemand(boolean onDemand) {
+       runner.setRenderOnDemand(onDemand);
+   }
+   
+   public static boolean getRenderOnDemand() {
+       return runner.getRenderOnDemand();
+   }
+   
+   public static void requestFrame() {
+       runner.requestFrame();
+   }
+   
+   /**
+    * Canvases are drawn by the shared runner according to their display's
+    * RenderPolicyA3D, instead of by the FrameHandler.
+    */
+   public static void addCanvas(Canvas canvas, DisplayRendererA3D dspRenderer) {
+       runner.addCanvas(canvas, dspRenderer);
+   }
+   
+   public static void removeCanvas(Canvas canvas) {
+       runner.removeCanvas(canvas);
+   }
+   
+   /** the canvas under the mouse gets priority, null for none */
+   public static void setPriorityCanvas(Component canvas) {
+       runner.setPriorityCanvas(canvas);
+   }
+   
+   public static Component getPriorityCanvas() {
+       return runner.getPriorityCanvas();
+   }
+   
 }
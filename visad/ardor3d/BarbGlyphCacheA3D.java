@@ -0,0 +1,213 @@
+//
+// BarbGlyphCacheA3D.java
+//
+
+/*
+VisAD system for interactive analysis and visualization of numerical
+data.  Copyright (C) 1996 - 2017 Bill Hibbard, Curtis Rueden, Tom
+Rink, Dave Glowacki, Steve Emmerson, Tom Whittaker, Don Murray, and
+Tommy Jasmin.
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Library General Public
+License as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Library General Public License for more details.
+
+You should have received a copy of the GNU Library General Public
+License along with this library; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330, Boston,
+MA 02111-1307, USA
+*/
+
+package visad.ardor3d;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+   BarbGlyphCacheA3D places wind barbs from shapes built once per speed
+   class and hemisphere, instead of computing every barb's vertices.<P>
+
+   A barb's shape only depends on its counts of 50, 10 and 5 knot
+   flags, its hemisphere and the barb scale; its position and direction
+   are a translation and a rotation of that shape.  Each shape is made
+   by the renderer's own makeVector, pointing along +x at the origin, so
+   placed barbs look the same as barbs made one by one.  Calm winds are
+   drawn as a circle and are only translated.<P>
+
+   Only the makeVector of BarbManipulationRendererA3D, without speed
+   numbers, is known to have this form; for other renderers
+   forRenderer returns null.<P>
+*/
+class BarbGlyphCacheA3D {
+
+  private static final float KNOTS_PER_MPS = (float) (3600.0 / 1853.248);
+
+  private final BarbRenderer renderer;
+  private final float scale;
+  private final float pt_size;
+  private final boolean knots;
+
+  private final Map<Integer, Glyph> glyphs = new HashMap<Integer, Glyph>();
+
+  private BarbGlyphCacheA3D(BarbRenderer renderer, float scale, float pt_size) {
+    this.renderer = renderer;
+    this.scale = scale;
+    this.pt_size = pt_size;
+    this.knots = renderer.getKnotsConvert();
+  }
+
+  /** return a cache for renderer's barbs, or null if they cannot be cached */
+  static BarbGlyphCacheA3D forRenderer(Object renderer, float scale, float pt_size) {
+    if (!(renderer instanceof BarbRenderer)) return null;
+    try {
+      Class<?> declaring = renderer.getClass().getMethod("makeVector",
+          boolean.class, float.class, float.class, float.class, float.class,
+          float.class, float.class, float.class, float[].class, float[].class,
+          float[].class, int[].class, float[].class, float[].class,
+          float[].class, int[].class).getDeclaringClass();
+      if (declaring == BarbManipulationRendererA3D.class) {
+        if (!((BarbManipulationRendererA3D) renderer).getNoNumbers()) return null;
+      }
+      else if (declaring != BarbRendererA3D.class) {
+        return null;
+      }
+    }
+    catch (NoSuchMethodException e) {
+      return null;
+    }
+    return new BarbGlyphCacheA3D((BarbRenderer) renderer, scale, pt_size);
+  }
+
+  /**
+   * Same contract as BarbRenderer.makeVector, for the renderer this
+   * cache was made for: append the barb's line and triangle vertices
+   * and return {x, y, pole end x, pole end y}.
+   */
+  float[] makeVector(boolean south, float x, float y, float z,
+                     float f0, float f1,
+                     float[] vx, float[] vy, float[] vz, int[] numv,
+                     float[] tx, float[] ty, float[] tz, int[] numt) {
+    Glyph glyph = getGlyph(south, f0, f1);
+
+    float c = 1.0f;
+    float s = 0.0f;
+    if (!glyph.calm) {
+      // pole points against the wind, as in makeVector
+      float spd = (float) Math.sqrt(f0 * f0 + f1 * f1);
+      c = -f0 / spd;
+      s = -f1 / spd;
+    }
+
+    int nv = numv[0];
+    for (int i = 0; i < glyph.lx.length; i++) {
+      vx[nv] = x + c * glyph.lx[i] - s * glyph.ly[i];
+      vy[nv] = y + s * glyph.lx[i] + c * glyph.ly[i];
+      vz[nv] = z;
+      nv++;
+    }
+    numv[0] = nv;
+
+    int nt = numt[0];
+    for (int i = 0; i < glyph.tx.length; i++) {
+      tx[nt] = x + c * glyph.tx[i] - s * glyph.ty[i];
+      ty[nt] = y + s * glyph.tx[i] + c * glyph.ty[i];
+      tz[nt] = z;
+      nt++;
+    }
+    numt[0] = nt;
+
+    return new float[] {x, y,
+                        x + c * glyph.endX - s * glyph.endY,
+                        y + s * glyph.endX + c * glyph.endY};
+  }
+
+  /**
+   * Write glyph, placed at (x, y, z) for wind (f0, f1), as interleaved
+   * xyz into vcoords from vertex v and tcoords from vertex t.
+   */
+  static void place(Glyph glyph, float x, float y, float z, float f0, float f1,
+                    float[] vcoords, int v, float[] tcoords, int t) {
+    float c = 1.0f;
+    float s = 0.0f;
+    if (!glyph.calm) {
+      float spd = (float) Math.sqrt(f0 * f0 + f1 * f1);
+      c = -f0 / spd;
+      s = -f1 / spd;
+    }
+    int m = 3 * v;
+    for (int i = 0; i < glyph.lx.length; i++) {
+      vcoords[m++] = x + c * glyph.lx[i] - s * glyph.ly[i];
+      vcoords[m++] = y + s * glyph.lx[i] + c * glyph.ly[i];
+      vcoords[m++] = z;
+    }
+    m = 3 * t;
+    for (int i = 0; i < glyph.tx.length; i++) {
+      tcoords[m++] = x + c * glyph.tx[i] - s * glyph.ty[i];
+      tcoords[m++] = y + s * glyph.tx[i] + c * glyph.ty[i];
+      tcoords[m++] = z;
+    }
+  }
+
+  /** the glyph for this wind, built on first use; not thread safe */
+  Glyph getGlyph(boolean south, float f0, float f1) {
+    float spd = (float) Math.sqrt(f0 * f0 + f1 * f1);
+    float kts = knots ? spd * KNOTS_PER_MPS : spd;
+
+    // the speed class, computed as makeVector does
+    int key;
+    if (kts >= 2.5) {
+      float wsp25 = (float) Math.max(kts + 2.5, 5.0);
+      int nbarb50 = (int) (wsp25 / 50.f);
+      int nbarb10 = (int) ((wsp25 - (nbarb50 * 50.f)) / 10.f);
+      int nbarb5 = (int) ((wsp25 - (nbarb50 * 50.f) - (nbarb10 * 10.f)) / 5.f);
+      int extraPole = (wsp25 >= 5.0f && wsp25 < 10.0f) ? 1 : 0;
+      key = (((nbarb50 * 8 + nbarb10) * 2 + nbarb5) * 2 + extraPole) * 2 + 1;
+    }
+    else {
+      key = 0;
+    }
+    key = key * 2 + (south ? 1 : 0);
+
+    Glyph glyph = glyphs.get(key);
+    if (glyph != null) {
+      return glyph;
+    }
+    // build it pointing along +x: makeVector's pole runs along -(f0, f1)
+    glyph = new Glyph(renderer, scale, pt_size, key >> 1 == 0, south, spd);
+    glyphs.put(key, glyph);
+    return glyph;
+  }
+
+  /** one barb shape, pointing along +x at the origin */
+  static final class Glyph {
+    final boolean calm;
+    final float[] lx, ly, tx, ty;
+    final float endX, endY;
+
+    Glyph(BarbRenderer renderer, float scale, float pt_size, boolean calm,
+          boolean south, float spd) {
+      this.calm = calm;
+      int n = 256;
+      float[] vx = new float[n], vy = new float[n], vz = new float[n];
+      float[] ux = new float[n], uy = new float[n], uz = new float[n];
+      int[] numv = {0};
+      int[] numt = {0};
+      float[] mbarb = renderer.makeVector(south, 0f, 0f, 0f, scale, pt_size,
+                                          calm ? 0f : -spd, 0f,
+                                          vx, vy, vz, numv, ux, uy, uz, numt);
+      lx = Arrays.copyOf(vx, numv[0]);
+      ly = Arrays.copyOf(vy, numv[0]);
+      tx = Arrays.copyOf(ux, numt[0]);
+      ty = Arrays.copyOf(uy, numt[0]);
+      endX = (mbarb != null && mbarb.length > 3) ? mbarb[2] : 0f;
+      endY = (mbarb != null && mbarb.length > 3) ? mbarb[3] : 0f;
+    }
+  }
+}
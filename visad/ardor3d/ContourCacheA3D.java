@@ -0,0 +1,464 @@
+//
+// ContourCacheA3D.java
+//
+
+/*
+VisAD system for interactive analysis and visualization of numerical
+data.  Copyright (C) 1996 - 2017 Bill Hibbard, Curtis Rueden, Tom
+Rink, Dave Glowacki, Steve Emmerson, Tom Whittaker, Don Murray, and
+Tommy Jasmin.
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Library General Public
+License as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Library General Public License for more details.
+
+You should have received a copy of the GNU Library General Public
+License along with this library; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330, Boston,
+MA 02111-1307, USA
+*/
+
+package visad.ardor3d;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Vector;
+
+import visad.ContourControl;
+import visad.ContourLabelGeometry;
+import visad.Display;
+import visad.GraphicsModeControl;
+import visad.ProjectionControl;
+import visad.SampledSet;
+import visad.ScalarMap;
+import visad.Set;
+import visad.VisADException;
+import visad.VisADGeometryArray;
+
+/**
+   ContourCacheA3D keeps the geometry produced by makeContour, keyed by
+   a SHA-256 digest of the mapped values and grid plus the state of the
+   ContourControls and GraphicsModeControl involved, and the projection
+   scale when labels are auto-sized.  Keys hold no reference to the
+   caller's arrays.  A hit replays the
+   recorded addToGroup and addLabelsToGroup calls into the new group, so
+   re-transforming an unchanged field, or showing the same field in
+   several displays, skips contouring.<P>
+
+   The cache is off until setMaxBytes is called, since building a key
+   reads the whole grid, which only pays when the same field is
+   contoured again.  It is shared by all displays and holds at most
+   getMaxBytes() of geometry, least recently used first out.  Only the
+   VisADGeometryArrays are shared; each replay builds its own scene
+   graph.<P>
+*/
+public class ContourCacheA3D {
+
+  public static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+
+  private static long maxBytes = 0;
+  private static long bytes = 0;
+
+  private static final LinkedHashMap<Key, Entry> cache =
+      new LinkedHashMap<Key, Entry>(16, 0.75f, true);
+
+  private static long hitCount = 0;
+  private static long missCount = 0;
+  private static long evictionCount = 0;
+
+  private ContourCacheA3D() {
+  }
+
+  /**
+   * Set the most geometry the cache may hold, e.g. DEFAULT_MAX_BYTES.
+   * @param max bytes of coordinates, colors and normals; 0 (the default)
+   *            disables the cache
+   */
+  public static synchronized void setMaxBytes(long max) {
+    maxBytes = Math.max(0, max);
+    trim();
+  }
+
+  public static synchronized long getMaxBytes() {
+    return maxBytes;
+  }
+
+  static synchronized boolean isEnabled() {
+    return maxBytes > 0;
+  }
+
+  public static synchronized long getBytes() {
+    return bytes;
+  }
+
+  public static synchronized int getEntryCount() {
+    return cache.size();
+  }
+
+  public static synchronized long getHitCount() {
+    return hitCount;
+  }
+
+  public static synchronized long getMissCount() {
+    return missCount;
+  }
+
+  public static synchronized double getHitRate() {
+    long n = hitCount + missCount;
+    return (n == 0) ? 0.0 : (double) hitCount / n;
+  }
+
+  public static synchronized long getEvictionCount() {
+    return evictionCount;
+  }
+
+  public static synchronized void resetStatistics() {
+    hitCount = 0;
+    missCount = 0;
+    evictionCount = 0;
+  }
+
+  public static synchronized void clear() {
+    cache.clear();
+    bytes = 0;
+  }
+
+  static synchronized Entry get(Key key) {
+    Entry entry = cache.get(key);
+    if (entry != null) {
+      hitCount++;
+    }
+    else {
+      missCount++;
+    }
+    return entry;
+  }
+
+  static synchronized void put(Key key, Recording recording, boolean result) {
+    Entry entry = new Entry(recording.ops, result);
+    if (entry.bytes > maxBytes) {
+      return;
+    }
+    Entry old = cache.put(key, entry);
+    if (old != null) {
+      bytes -= old.bytes;
+    }
+    bytes += entry.bytes;
+    trim();
+  }
+
+  private static void trim() {
+    Iterator<Entry> it = cache.values().iterator();
+    while (bytes > maxBytes && it.hasNext()) {
+      bytes -= it.next().bytes;
+      it.remove();
+      evictionCount++;
+    }
+  }
+
+  /** the ContourControls of the IsoContour maps in MapVector, in order */
+  static List<ContourControl> getContourControls(Vector MapVector) {
+    List<ContourControl> controls = new ArrayList<ContourControl>();
+    for (int i = 0; i < MapVector.size(); i++) {
+      ScalarMap map = (ScalarMap) MapVector.elementAt(i);
+      if (Display.IsoContour.equals(map.getDisplayScalar())) {
+        controls.add((ContourControl) map.getControl());
+      }
+    }
+    return controls;
+  }
+
+  /**
+   * Make the cache key for a makeContour call, or return null if the
+   * call involves no contour maps.
+   */
+  static Key makeKey(int valueArrayLength, int[] valueToScalar,
+      float[][] display_values, int[] inherited_values, Vector MapVector,
+      int[] valueToMap, int domain_length, boolean[][] range_select,
+      int spatialManifoldDimension, Set spatial_set, byte[][] color_values,
+      boolean indexed, GraphicsModeControl mode, boolean[] swap,
+      float constant_alpha, float[] constant_color, Set domain_set,
+      ProjectionControl p_cntrl) throws VisADException {
+    List<ContourControl> controls = getContourControls(MapVector);
+    if (controls.isEmpty()) {
+      return null;
+    }
+
+    StringBuilder params = new StringBuilder();
+    for (int i = 0; i < MapVector.size(); i++) {
+      params.append(MapVector.elementAt(i)).append('\n');
+    }
+    boolean autoSize = false;
+    for (ContourControl control : controls) {
+      params.append(control.getSaveString()).append('\n');
+      autoSize |= control.getAutoSizeLabels();
+    }
+    params.append(mode.getSaveString());
+    if (autoSize && p_cntrl != null) {
+      // auto-sized labels are made for the current scale
+      params.append('\n').append(
+          ProjectionControlListener.getScale(p_cntrl.getMatrix()));
+    }
+
+    Digester h = new Digester();
+    h.add(valueArrayLength);
+    h.add(domain_length);
+    h.add(spatialManifoldDimension);
+    h.add(indexed ? 1 : 0);
+    h.add(Float.floatToIntBits(constant_alpha));
+    h.add(valueToScalar);
+    h.add(inherited_values);
+    h.add(valueToMap);
+    h.add(swap);
+    h.add(constant_color);
+    h.add(display_values);
+    h.add(color_values);
+    h.add(range_select);
+    h.add(spatial_set);
+    h.add(domain_set);
+    return new Key(h.digest(), params.toString());
+  }
+
+  /** estimate of the memory held by arrays */
+  static long estimateBytes(VisADGeometryArray array) {
+    if (array == null) return 0;
+    long n = 0;
+    if (array.coordinates != null) n += 4L * array.coordinates.length;
+    if (array.normals != null) n += 4L * array.normals.length;
+    if (array.texCoords != null) n += 4L * array.texCoords.length;
+    if (array.colors != null) n += array.colors.length;
+    if (array instanceof ContourLabelGeometry) {
+      ContourLabelGeometry label = (ContourLabelGeometry) array;
+      n += estimateBytes(label.label) + estimateBytes(label.labelAnchor) +
+           estimateBytes(label.expSegLeft) + estimateBytes(label.segLeftAnchor) +
+           estimateBytes(label.expSegRight) + estimateBytes(label.segRightAnchor);
+    }
+    return n;
+  }
+
+  static final class Key {
+    private final byte[] digest;
+    private final String params;
+
+    Key(byte[] digest, String params) {
+      this.digest = digest;
+      this.params = params;
+    }
+
+    public boolean equals(Object o) {
+      if (!(o instanceof Key)) return false;
+      Key k = (Key) o;
+      return Arrays.equals(digest, k.digest) && params.equals(k.params);
+    }
+
+    public int hashCode() {
+      return Arrays.hashCode(digest) ^ params.hashCode();
+    }
+  }
+
+  /** SHA-256 of the values added, fed through a small buffer */
+  private static final class Digester {
+    private final MessageDigest md;
+    private final ByteBuffer buf = ByteBuffer.allocate(8192);
+
+    Digester() throws VisADException {
+      try {
+        md = MessageDigest.getInstance("SHA-256");
+      }
+      catch (NoSuchAlgorithmException e) {
+        throw new VisADException("ContourCacheA3D: " + e);
+      }
+    }
+
+    byte[] digest() {
+      flush();
+      return md.digest();
+    }
+
+    private void flush() {
+      buf.flip();
+      md.update(buf);
+      buf.clear();
+    }
+
+    void add(int v) {
+      if (buf.remaining() < 4) flush();
+      buf.putInt(v);
+    }
+
+    void add(byte v) {
+      if (buf.remaining() < 1) flush();
+      buf.put(v);
+    }
+
+    void add(int[] a) {
+      if (a == null) { add(-1); return; }
+      add(a.length);
+      for (int v : a) add(v);
+    }
+
+    void add(float[] a) {
+      if (a == null) { add(-1); return; }
+      add(a.length);
+      for (float v : a) add(Float.floatToIntBits(v));
+    }
+
+    void add(boolean[] a) {
+      if (a == null) { add(-1); return; }
+      add(a.length);
+      for (boolean v : a) add((byte) (v ? 1 : 0));
+    }
+
+    void add(float[][] a) {
+      if (a == null) { add(-1); return; }
+      add(a.length);
+      for (float[] v : a) add(v);
+    }
+
+    void add(byte[][] a) {
+      if (a == null) { add(-1); return; }
+      add(a.length);
+      for (byte[] v : a) {
+        if (v == null) { add(-1); continue; }
+        add(v.length);
+        for (byte b : v) add(b);
+      }
+    }
+
+    void add(boolean[][] a) {
+      if (a == null) { add(-1); return; }
+      add(a.length);
+      for (boolean[] v : a) add(v);
+    }
+
+    void add(Set set) throws VisADException {
+      if (set == null) { add(-1); return; }
+      add(set.getClass().getName().hashCode());
+      add(set.getType().hashCode());
+      if (set instanceof SampledSet) {
+        add(((SampledSet) set).getSamples(false));
+      }
+      else {
+        add(set.hashCode());
+      }
+    }
+  }
+
+  static final class Entry {
+    final List<Op> ops;
+    final boolean result;
+    final long bytes;
+
+    Entry(List<Op> ops, boolean result) {
+      this.ops = ops;
+      this.result = result;
+      long n = 0;
+      for (Op op : ops) {
+        if (op.arrays != null) {
+          for (VisADGeometryArray array : op.arrays) {
+            n += estimateBytes(array);
+          }
+        }
+        else {
+          n += estimateBytes(op.array);
+        }
+      }
+      this.bytes = n;
+    }
+
+    /** rebuild the recorded geometry under group */
+    void replay(ShadowTypeA3D shadow, Object group, GraphicsModeControl mode,
+                List<ContourControl> controls, ProjectionControl p_cntrl)
+        throws VisADException {
+      int[] cnt = new int[] {0};
+      for (Op op : ops) {
+        GraphicsModeControl m = op.callMode ? mode : op.mode;
+        if (op.arrays == null) {
+          shadow.addToGroup(group, op.array, m, op.constant_alpha, op.constant_color);
+        }
+        else {
+          shadow.addLabelsToGroup(group, op.arrays, m, controls.get(op.control),
+              p_cntrl, cnt, op.constant_alpha, op.constant_color);
+        }
+      }
+    }
+  }
+
+  /** one addToGroup (arrays == null) or addLabelsToGroup call */
+  static final class Op {
+    VisADGeometryArray array;
+    VisADGeometryArray[] arrays;
+    GraphicsModeControl mode;
+    boolean callMode;
+    int control;
+    float constant_alpha;
+    float[] constant_color;
+  }
+
+  /**
+     The calls made on one group while it is being contoured.  attached
+     counts the children they added, so a makeContour that also attached
+     something else to the group is not cached.
+  */
+  static final class Recording {
+    final List<Op> ops = new ArrayList<Op>();
+    final Object group;
+    final GraphicsModeControl mode;
+    final List<ContourControl> controls;
+    int attached = 0;
+
+    Recording(Object group, GraphicsModeControl mode,
+              List<ContourControl> controls) {
+      this.group = group;
+      this.mode = mode;
+      this.controls = controls;
+    }
+
+    synchronized void addGeometry(VisADGeometryArray array, GraphicsModeControl m,
+                                  float constant_alpha, float[] constant_color) {
+      Op op = new Op();
+      op.array = array;
+      op.mode = m;
+      op.callMode = (m == mode);
+      op.constant_alpha = constant_alpha;
+      op.constant_color = constant_color;
+      ops.add(op);
+    }
+
+    synchronized void addLabels(VisADGeometryArray[] arrays, GraphicsModeControl m,
+                                ContourControl control, float constant_alpha,
+                                float[] constant_color) {
+      Op op = new Op();
+      op.arrays = arrays;
+      op.mode = m;
+      op.callMode = (m == mode);
+      op.control = Math.max(0, controls.indexOf(control));
+      op.constant_alpha = constant_alpha;
+      op.constant_color = constant_color;
+      ops.add(op);
+    }
+
+    synchronized void addAttached(int n) {
+      attached += n;
+    }
+
+    /** append the calls of a band contoured separately */
+    synchronized void append(Recording band) {
+      ops.addAll(band.ops);
+      attached += band.attached;
+    }
+  }
+}
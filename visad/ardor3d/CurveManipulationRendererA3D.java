@@ -110,9 +110,17 @@ public class CurveManipulationRendererA3D extends DirectManipulationRendererA3D
 
   private float[][] spatialValues = null;
 
+  /** spatialValues indexed for checkClose, updated by setSpatialValues */
+  private transient PolylineIndexA3D spatialIndex = null;
+
   /** index into spatialValues found by checkClose */
   private int closeIndex = -1;
 
+  /** curve being drawn by the current drag, made into a set on release */
+  private transient CurveStrokeA3D stroke = null;
+  /** display point of the previous drag_direct */
+  private float[] lastDisplayPoint = null;
+
   /** for use in drag_direct */
   private transient DataDisplayLink link = null;
   private transient DataReference ref = null;
@@ -123,6 +131,9 @@ public class CurveManipulationRendererA3D extends DirectManipulationRendererA3D
 
   float[] default_values;
 
+  /** lengths of the curves in spatialValues, set by doTransform */
+  int[] curve_lengths;
+
   /** point on direct manifold line or plane */
   private float point_x, point_y, point_z;
   /** normalized direction of line or perpendicular to plane */
@@ -298,6 +309,71 @@ public class CurveManipulationRendererA3D extends DirectManipulationRendererA3D
    */
   public synchronized void setSpatialValues(float[][] spatial_values) {
     spatialValues = spatial_values;
+    if (spatial_values == null) {
+      spatialIndex = null;
+      return;
+    }
+    int n = spatial_values[0].length;
+    int[] lengths = curve_lengths;
+    int total = 0;
+    if (lengths != null) {
+      for (int len : lengths) total += len;
+    }
+    if (total != n) lengths = null;
+    if (spatialIndex == null) {
+      spatialIndex = new PolylineIndexA3D();
+      spatialIndex.set(spatial_values, lengths);
+      return;
+    }
+    updateIndex(spatial_values, lengths);
+  }
+
+  /**
+   * Bring spatialIndex up to spatial_values, moving and appending only
+   * the vertices that changed when the curves are otherwise the same.
+   */
+  private void updateIndex(float[][] spatial_values, int[] lengths) {
+    int n = spatial_values[0].length;
+    int m = spatialIndex.size();
+    boolean[] starts = new boolean[n];
+    if (n > 0) starts[0] = true;
+    if (lengths != null) {
+      int start = 0;
+      for (int len : lengths) {
+        if (start < n) starts[start] = true;
+        start += len;
+      }
+    }
+    if (n < m) {
+      spatialIndex.set(spatial_values, lengths);
+      return;
+    }
+    float[] x = spatial_values[0], y = spatial_values[1], z = spatial_values[2];
+    float[] xyz = new float[3];
+    int changed = 0;
+    for (int i=0; i<m; i++) {
+      if (starts[i] != spatialIndex.isCurveStart(i)) {
+        changed = m;
+        break;
+      }
+      spatialIndex.get(i, xyz);
+      if (x[i] != xyz[0] || y[i] != xyz[1] || z[i] != xyz[2]) changed++;
+    }
+    if (8 * changed > m) {
+      // most curves changed: cheaper to index them again
+      spatialIndex.set(spatial_values, lengths);
+      return;
+    }
+    for (int i=0; i<m && changed > 0; i++) {
+      spatialIndex.get(i, xyz);
+      if (x[i] != xyz[0] || y[i] != xyz[1] || z[i] != xyz[2]) {
+        spatialIndex.move(i, x[i], y[i], z[i]);
+        changed--;
+      }
+    }
+    for (int i=m; i<n; i++) {
+      spatialIndex.append(x[i], y[i], z[i], starts[i]);
+    }
   }
 
   /** 
@@ -322,25 +398,43 @@ public class CurveManipulationRendererA3D extends DirectManipulationRendererA3D
       float d_y = (float) direction[1];
       float d_z = (float) direction[2];
   
-      for (int i=0; i<spatialValues[0].length; i++) {
-        float x = spatialValues[0][i] - o_x;
-        float y = spatialValues[1][i] - o_y;
-        float z = spatialValues[2][i] - o_z;
-        float dot = x * d_x + y * d_y + z * d_z;
-        x = x - dot * d_x;
-        y = y - dot * d_y;
-        z = z - dot * d_z;
-        float d = (float) Math.sqrt(x * x + y * y + z * z);
-        if (d < distance) {
-          distance = d;
+      double dd = direction[0] * direction[0] + direction[1] * direction[1] +
+                  direction[2] * direction[2];
+      if (spatialIndex != null && Math.abs(dd - 1.0) < 1.0e-6) {
+        int i = spatialIndex.nearestVertex(o_x, o_y, o_z, d_x, d_y, d_z);
+        if (i >= 0) {
+          distance = spatialIndex.getDistance();
           closeIndex = i;
+          float x = spatialValues[0][i] - o_x;
+          float y = spatialValues[1][i] - o_y;
+          float z = spatialValues[2][i] - o_z;
+          float dot = x * d_x + y * d_y + z * d_z;
+          offsetx = x - dot * d_x;
+          offsety = y - dot * d_y;
+          offsetz = z - dot * d_z;
+        }
+      }
+      else {
+        for (int i=0; i<spatialValues[0].length; i++) {
+          float x = spatialValues[0][i] - o_x;
+          float y = spatialValues[1][i] - o_y;
+          float z = spatialValues[2][i] - o_z;
+          float dot = x * d_x + y * d_y + z * d_z;
+          x = x - dot * d_x;
+          y = y - dot * d_y;
+          z = z - dot * d_z;
+          float d = (float) Math.sqrt(x * x + y * y + z * z);
+          if (d < distance) {
+            distance = d;
+            closeIndex = i;
+
+            offsetx = x;
+            offsety = y;
+            offsetz = z;
 
-          offsetx = x;
-          offsety = y;
-          offsetz = z;
+          }
 
         }
-  
       }
       if (distance <= getDisplayRenderer().getPickThreshhold()) {
         return distance;
@@ -372,16 +466,88 @@ public class CurveManipulationRendererA3D extends DirectManipulationRendererA3D
     }
   }
 
+  /**
+   * Find the curve segment closest to a ray, for inserting a point
+   * between two vertices of a curve.
+   * @param   origin     origin of ray
+   * @param   direction  direction of the ray
+   * @param   result     set to the distance from the ray to the segment,
+   *                     and the fraction of the way along the segment of
+   *                     its point closest to the ray
+   * @return  index into spatialValues of the first vertex of the segment,
+   *          or -1 if there are no segments
+   */
+  public synchronized int checkCloseSegment(double[] origin, double[] direction,
+                                            float[] result) {
+    if (spatialIndex == null) return -1;
+    double len = Math.sqrt(direction[0] * direction[0] +
+                           direction[1] * direction[1] +
+                           direction[2] * direction[2]);
+    if (!(len > 0.0)) return -1;
+    int i = spatialIndex.nearestSegment((float) origin[0], (float) origin[1],
+                (float) origin[2], (float) (direction[0] / len),
+                (float) (direction[1] / len), (float) (direction[2] / len));
+    if (i >= 0) {
+      result[0] = spatialIndex.getDistance();
+      result[1] = spatialIndex.getSegmentT();
+    }
+    return i;
+  }
+
   public void setGreedy(boolean greedy) {
     this.greedy = greedy;
   }
 
   /** 
-   * Mouse button released, ending direct manipulation.  Does nothing
-   * now, may need to do this for performance.
+   * Mouse button released, ending direct manipulation.  A curve drawn
+   * by the drag is set in the DataReference now.
    */
   public synchronized void release_direct() {
-    // may need to do this for performance
+    finishStroke();
+  }
+
+  /** replace the last curve with the stroke drawn since it began */
+  private void finishStroke() {
+    CurveStrokeA3D s = stroke;
+    stroke = null;
+    if (s == null) return;
+    try {
+      UnionSet data = s.getData();
+      SampledSet[] sets = data.getSets();
+      int n = sets.length;
+      sets[n-1] = new Gridded2DSet(type, s.getSamples(), s.getLength(),
+                                   data.getCoordinateSystem(),
+                                   data.getSetUnits(), null);
+      ref.setData(new UnionSet(type, sets));
+      link.clearData();
+    }
+    catch (VisADException e) {
+      System.out.println("release_direct " + e);
+      e.printStackTrace();
+    }
+    catch (RemoteException e) {
+      System.out.println("release_direct " + e);
+      e.printStackTrace();
+    }
+    finally {
+      s.dispose();
+    }
+  }
+
+  /** color of the stroke line, from the default values */
+  private float[] strokeColor() {
+    DisplayImpl display = getDisplay();
+    float[] color = {1f, 1f, 1f};
+    if (display != null && default_values != null) {
+      DisplayRealType[] rgb = {Display.Red, Display.Green, Display.Blue};
+      for (int i=0; i<3; i++) {
+        int index = display.getDisplayScalarIndex(rgb[i]);
+        if (index >= 0 && default_values[index] == default_values[index]) {
+          color[i] = default_values[index];
+        }
+      }
+    }
+    return color;
   }
 
   /**
@@ -410,6 +576,7 @@ public class CurveManipulationRendererA3D extends DirectManipulationRendererA3D
 
     if (first) {
       stop = false;
+      finishStroke();
     }
     else {
       if (stop) return;
@@ -526,17 +693,14 @@ public class CurveManipulationRendererA3D extends DirectManipulationRendererA3D
           }
         }
         else { // !first
-          float[][] samples = sets[n-1].getSamples(false);
-          int m = samples[0].length;
-          float[][] new_samples = new float[2][m+1];
-          System.arraycopy(samples[0], 0, new_samples[0], 0, m);
-          System.arraycopy(samples[1], 0, new_samples[1], 0, m);
-          new_samples[0][m] = value[0];
-          new_samples[1][m] = value[1];
-          sets[n-1] = new Gridded2DSet(type, new_samples, m+1,
-                                       data.getCoordinateSystem(),
-                                       data.getSetUnits(), null);
-          newData = new UnionSet(type, sets);
+          // append to the stroke; its set is made on release
+          if (stroke == null) {
+            stroke = new CurveStrokeA3D((DisplayRendererA3D) getDisplayRenderer(),
+                data, sets[n-1].getSamples(false), lastDisplayPoint, strokeColor());
+          }
+          stroke.append(value[0], value[1], xx);
+          lastDisplayPoint = xx;
+          return;
         }
       }
       else { // closeIndex >= 0
@@ -754,6 +918,7 @@ public class CurveManipulationRendererA3D extends DirectManipulationRendererA3D
         }
       }
 
+      lastDisplayPoint = xx;
       ref.setData(newData);
       link.clearData();
 
@@ -0,0 +1,187 @@
+//
+// CurveStrokeA3D.java
+//
+
+/*
+VisAD system for interactive analysis and visualization of numerical
+data.  Copyright (C) 1996 - 2017 Bill Hibbard, Curtis Rueden, Tom
+Rink, Dave Glowacki, Steve Emmerson, Tom Whittaker, Don Murray, and
+Tommy Jasmin.
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Library General Public
+License as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Library General Public License for more details.
+
+You should have received a copy of the GNU Library General Public
+License along with this library; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330, Boston,
+MA 02111-1307, USA
+*/
+
+package visad.ardor3d;
+
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+
+import com.ardor3d.math.ColorRGBA;
+import com.ardor3d.renderer.IndexMode;
+import com.ardor3d.scenegraph.Mesh;
+import com.ardor3d.scenegraph.MeshData;
+import com.ardor3d.scenegraph.Node;
+import com.ardor3d.scenegraph.hint.LightCombineMode;
+import com.ardor3d.util.GameTaskQueue;
+import com.ardor3d.util.geom.BufferUtils;
+
+import visad.UnionSet;
+
+/**
+   CurveStrokeA3D holds the curve being drawn by a freehand drag of
+   CurveManipulationRendererA3D.  Samples are appended to arrays that
+   grow by doubling, and the stroke is shown as a line strip in the
+   display transform, updated from the UPDATE queue with only the new
+   vertices written.  The curve's Gridded2DSet is made once, when the
+   drag ends.<P>
+*/
+class CurveStrokeA3D {
+
+  private final DisplayRendererA3D dspRenderer;
+
+  /** the curves when the stroke began; the stroke replaces the last */
+  private final UnionSet data;
+
+  private float[][] samples;
+  private int length;
+
+  /** display coordinates of the stroke, and how many are in the Mesh */
+  private float[] coords;
+  private int coordCount = 0;
+  private int shownCount = 0;
+
+  private final Node node = new Node();
+  private final Mesh mesh = new Mesh();
+  private FloatBuffer buffer = null;
+  private boolean update_queued = false;
+  private boolean disposed = false;
+
+  /**
+   * Begin a stroke that extends the last set of data, whose samples are
+   * start_samples, drawn from the display point start.
+   */
+  CurveStrokeA3D(DisplayRendererA3D dspRenderer, UnionSet data,
+                 float[][] start_samples, float[] start, float[] color) {
+    this.dspRenderer = dspRenderer;
+    this.data = data;
+    length = start_samples[0].length;
+    int capacity = Math.max(64, 2 * length);
+    samples = new float[][] {Arrays.copyOf(start_samples[0], capacity),
+                             Arrays.copyOf(start_samples[1], capacity)};
+    coords = new float[3 * 64];
+    if (start != null) {
+      System.arraycopy(start, 0, coords, 0, 3);
+      coordCount = 1;
+    }
+
+    MeshData meshData = new MeshData();
+    meshData.setIndexMode(IndexMode.LineStrip);
+    mesh.setMeshData(meshData);
+    mesh.setDefaultColor(new ColorRGBA(color[0], color[1], color[2], 1f));
+    mesh.getSceneHints().setLightCombineMode(LightCombineMode.Off);
+    node.attachChild(mesh);
+
+    Callable updateCallable = new Callable() {
+      public Object call() {
+        synchronized (CurveStrokeA3D.this) {
+          if (!disposed) {
+            CurveStrokeA3D.this.dspRenderer.getTransformNode().attachChild(node);
+          }
+        }
+        return null;
+      }
+    };
+    dspRenderer.getTaskQueueManager().getQueue(GameTaskQueue.UPDATE).enqueue(updateCallable);
+  }
+
+  /** append sample (v0, v1), shown at display point xyz */
+  synchronized void append(float v0, float v1, float[] xyz) {
+    if (length == samples[0].length) {
+      int capacity = 2 * length;
+      samples[0] = Arrays.copyOf(samples[0], capacity);
+      samples[1] = Arrays.copyOf(samples[1], capacity);
+    }
+    samples[0][length] = v0;
+    samples[1][length] = v1;
+    length++;
+
+    if (3 * (coordCount + 1) > coords.length) {
+      coords = Arrays.copyOf(coords, 2 * coords.length);
+    }
+    System.arraycopy(xyz, 0, coords, 3 * coordCount, 3);
+    coordCount++;
+    queueUpdate();
+  }
+
+  synchronized int getLength() {
+    return length;
+  }
+
+  /** the samples of the stroke, trimmed to its length */
+  synchronized float[][] getSamples() {
+    return new float[][] {Arrays.copyOf(samples[0], length),
+                          Arrays.copyOf(samples[1], length)};
+  }
+
+  UnionSet getData() {
+    return data;
+  }
+
+  /** remove the stroke line from the display */
+  synchronized void dispose() {
+    disposed = true;
+    Callable updateCallable = new Callable() {
+      public Object call() {
+        node.removeFromParent();
+        return null;
+      }
+    };
+    dspRenderer.getTaskQueueManager().getQueue(GameTaskQueue.UPDATE).enqueue(updateCallable);
+  }
+
+  /** copy vertices added since the last update into the Mesh; points
+      appended before the queued task runs are folded into it */
+  private void queueUpdate() {
+    if (update_queued || disposed) return;
+    update_queued = true;
+
+    Callable updateCallable = new Callable() {
+      public Object call() {
+        synchronized (CurveStrokeA3D.this) {
+          update_queued = false;
+          if (disposed || coordCount < 2) return null;
+          int n = 3 * coordCount;
+          if (buffer == null || buffer.capacity() < n) {
+            FloatBuffer grown = BufferUtils.createFloatBuffer(coords.length);
+            grown.put(coords, 0, 3 * shownCount);
+            buffer = grown;
+          }
+          // only the tail is new
+          buffer.limit(n);
+          buffer.position(3 * shownCount);
+          buffer.put(coords, 3 * shownCount, n - 3 * shownCount);
+          buffer.rewind();
+          shownCount = coordCount;
+          mesh.getMeshData().setVertexBuffer(buffer);
+          mesh.updateModelBound();
+        }
+        return null;
+      }
+    };
+    dspRenderer.getTaskQueueManager().getQueue(GameTaskQueue.UPDATE).enqueue(updateCallable);
+  }
+}
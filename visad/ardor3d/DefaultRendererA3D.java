@@ -62,6 +62,14 @@ public class DefaultRendererA3D extends RendererA3D {
 
   DataDisplayLink link = null;
 
+  private boolean progressiveAnimation = false;
+
+  private int contourTiles = 0;
+
+  private int streamlineTiles = 0;
+
+  private int streamlineVertexBudget = 0;
+
   /** this is the default DataRenderer used by the addReference method
       for DisplayImplJ3D */
   public DefaultRendererA3D () {
@@ -78,6 +86,70 @@ public class DefaultRendererA3D extends RendererA3D {
     link = links[0];
   }
 
+  /**
+   * Build animation frames progressively: the frame at the current
+   * AnimationControl step alone first, then the others by distance from
+   * it in the play direction (in parallel, except under an
+   * AnimationRendererA3D, which builds one at a time).  The Switch is
+   * live while doTransform builds, and frames are attached to it as
+   * they complete, so the current frame shows before the rest are done.
+   * The AnimationControl holds on the last completed frame when stepping
+   * onto one that is not ready yet.
+   *
+   * @param progressive true to enable progressive frame building
+   */
+  public void setProgressiveAnimation(boolean progressive) {
+    progressiveAnimation = progressive;
+  }
+
+  public boolean getProgressiveAnimation() {
+    return progressiveAnimation;
+  }
+
+  /**
+   * Contour large 2D grids as this many bands of rows, built
+   * concurrently and merged in row order.  Bands have at least 32 rows.
+   *
+   * @param tiles number of bands; 0 or 1 to contour on one thread
+   */
+  public void setContourTiles(int tiles) {
+    contourTiles = tiles;
+  }
+
+  public int getContourTiles() {
+    return contourTiles;
+  }
+
+  /**
+   * Trace streamlines over large 2D grids as this many bands of rows,
+   * concurrently, merged in row order.  The result depends on the
+   * number of bands, not on the number of threads.  Streamlines end at
+   * band boundaries, where the next band seeds its own.
+   *
+   * @param tiles number of bands; 0 or 1 to trace on one thread
+   */
+  public void setStreamlineTiles(int tiles) {
+    streamlineTiles = tiles;
+  }
+
+  public int getStreamlineTiles() {
+    return streamlineTiles;
+  }
+
+  /**
+   * Keep at most this many streamline vertices per field, in row band
+   * order; bands past the budget are not traced.
+   *
+   * @param vertices vertex budget; 0 for no limit
+   */
+  public void setStreamlineVertexBudget(int vertices) {
+    streamlineVertexBudget = Math.max(0, vertices);
+  }
+
+  public int getStreamlineVertexBudget() {
+    return streamlineVertexBudget;
+  }
+
   /** create a BranchGroup scene graph for Data in links[0] */
   public Node doTransform() throws VisADException, RemoteException {
     if (link == null) return null;
@@ -41,6 +41,15 @@ public class DirectManipulationRendererA3D extends RendererA3D {
 
   Node branch = null;
 
+  /** bounds of the spatial values, for the findDirect broad phase */
+  private volatile float[] pickBounds = null;
+
+  /** 1 if checkClose only measures distance to spatial values, 0 if not,
+      -1 if not yet known */
+  private int boundedPick = -1;
+
+  private static final float[] NO_BOUNDS = {0f, 0f, 0f, -1f};
+
   /** this DataRenderer supports direct manipulation for Real,
       RealTuple and Field Data objects (Field data objects must
       have RealType or RealTupleType ranges and Gridded1DSet
@@ -187,6 +196,66 @@ public class DirectManipulationRendererA3D extends RendererA3D {
     branch = b;
   }
 
+  /** set spatialValues from ShadowType.doTransform */
+  public synchronized void setSpatialValues(float[][] spatial_values) {
+    super.setSpatialValues(spatial_values);
+    updatePickBounds(spatial_values);
+  }
+
+  /** recompute the bounding sphere of spatial_values for getPickBounds */
+  void updatePickBounds(float[][] spatial_values) {
+    if (spatial_values == null || spatial_values.length < 3) {
+      pickBounds = NO_BOUNDS;
+      return;
+    }
+    float[] x = spatial_values[0];
+    float[] y = spatial_values[1];
+    float[] z = spatial_values[2];
+    double x0 = Double.MAX_VALUE, y0 = Double.MAX_VALUE, z0 = Double.MAX_VALUE;
+    double x1 = -Double.MAX_VALUE, y1 = -Double.MAX_VALUE, z1 = -Double.MAX_VALUE;
+    int n = 0;
+    for (int i=0; i<x.length; i++) {
+      if (x[i] != x[i] || y[i] != y[i] || z[i] != z[i]) continue;
+      x0 = Math.min(x0, x[i]);  x1 = Math.max(x1, x[i]);
+      y0 = Math.min(y0, y[i]);  y1 = Math.max(y1, y[i]);
+      z0 = Math.min(z0, z[i]);  z1 = Math.max(z1, z[i]);
+      n++;
+    }
+    if (n == 0) {
+      pickBounds = NO_BOUNDS;
+      return;
+    }
+    double cx = 0.5 * (x0 + x1), cy = 0.5 * (y0 + y1), cz = 0.5 * (z0 + z1);
+    double r2 = 0.0;
+    for (int i=0; i<x.length; i++) {
+      if (x[i] != x[i] || y[i] != y[i] || z[i] != z[i]) continue;
+      double ex = x[i] - cx, ey = y[i] - cy, ez = z[i] - cz;
+      r2 = Math.max(r2, ex * ex + ey * ey + ez * ez);
+    }
+    pickBounds = new float[] {(float) cx, (float) cy, (float) cz,
+                              (float) Math.sqrt(r2) * 1.0001f};
+  }
+
+  /**
+   * Return a sphere {x, y, z, radius} holding every point checkClose can
+   * measure a finite distance to, radius -1 if there are none, or null
+   * if checkClose is not limited to the spatial values.
+   */
+  float[] getPickBounds() {
+    if (boundedPick < 0) {
+      try {
+        Class<?> declaring = getClass().getMethod("checkClose",
+            double[].class, double[].class).getDeclaringClass();
+        boundedPick = (declaring == DataRenderer.class ||
+                       declaring == PickManipulationRendererA3D.class) ? 1 : 0;
+      }
+      catch (NoSuchMethodException e) {
+        boundedPick = 0;
+      }
+    }
+    return (boundedPick == 1) ? pickBounds : null;
+  }
+
   void addSwitch(DisplayRendererA3D displayRenderer, Node branch) {
     displayRenderer.addDirectManipulationSceneGraphComponent(branch, this);
   }
@@ -27,9 +27,13 @@ MA 02111-1307, USA
 package visad.ardor3d;
 
 import com.ardor3d.framework.CanvasRenderer;
+import com.ardor3d.intersection.PickResults;
 import com.ardor3d.math.ColorRGBA;
+import com.ardor3d.math.Ray3;
 import com.ardor3d.math.Transform;
+import com.ardor3d.math.Vector2;
 import com.ardor3d.math.type.ReadOnlyColorRGBA;
+import com.ardor3d.renderer.Camera;
 import com.ardor3d.renderer.ContextCapabilities;
 import com.ardor3d.renderer.state.ClipState;
 import com.ardor3d.renderer.state.RenderState;
@@ -41,9 +45,12 @@ import com.ardor3d.util.GameTaskQueue;
 import com.ardor3d.util.GameTaskQueueManager;
 
 import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.Enumeration;
 import java.util.Vector;
 import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import visad.AxisScale;
 import visad.ColorAlphaControl;
@@ -175,7 +182,14 @@ public abstract class DisplayRendererA3D extends DisplayRenderer implements Rend
   /** start value for cursor */
   private float point_x, point_y, point_z;
   
-  private boolean needDraw = false;
+  /** default time per frame for running each of the UPDATE and RENDER queues */
+  public static final double DEFAULT_TASK_BUDGET_MILLIS = 10;
+
+  /** frame-rate caps applied by the shared RunnerA3D */
+  private RenderPolicyA3D renderPolicy = new RenderPolicyA3D();
+
+  /** set by any change that needs a new frame; see SceneA3D.renderUnto */
+  private final AtomicBoolean needDraw = new AtomicBoolean(true);
   
   private final Object MUTEX = new Object();
 
@@ -195,12 +209,24 @@ public abstract class DisplayRendererA3D extends DisplayRenderer implements Rend
   ReadOnlyColorRGBA cursorColor = ColorRGBA.WHITE;
   
   private boolean destroyed = false;
+
+  /** contour labels drawn in screen space, created on first use */
+  private LabelLayerA3D labelLayer = null;
+  private boolean screenSpaceLabels = false;
+  private boolean glyphAtlasText = false;
+
+  /** screen-density thinning of flow glyphs, created on first use */
+  private FlowThinningA3D flowThinning = null;
   
   
   public DisplayRendererA3D () {
     super();
       this.rootClipState = (ClipState) RenderState.createState(RenderState.StateType.Clip);
       this.queueManager = GameTaskQueueManager.getManager(hashCode());
+      // enqueued tasks mark this display as needing a draw
+      queueManager.addQueue(GameTaskQueue.UPDATE, new TaskQueueA3D(this));
+      queueManager.addQueue(GameTaskQueue.RENDER, new TaskQueueA3D(this));
+      setTaskBudgetMillis(DEFAULT_TASK_BUDGET_MILLIS);
   }
 
   public void destroy() {
@@ -208,6 +234,12 @@ public abstract class DisplayRendererA3D extends DisplayRenderer implements Rend
     if (destroyed) return;
 
     if (mouse != null) mouse.destroy();
+    synchronized (this) {
+      if (flowThinning != null) {
+        flowThinning.destroy();
+        flowThinning = null;
+      }
+    }
     if (root != null) {
       Node node = root.getParent(); //SceneA3D root
       node.detachChild(root);
@@ -221,6 +253,7 @@ public abstract class DisplayRendererA3D extends DisplayRenderer implements Rend
 
     screen_locked = null;
     locked_trans = null;
+    labelLayer = null;
 
     trans = null;
     non_direct = null;
@@ -922,22 +955,49 @@ public abstract class DisplayRendererA3D extends DisplayRenderer implements Rend
    *          modifiers for direct manipulation or null if there is none.
    */
   public DataRenderer findDirect(VisADRay ray, int mouseModifiers) {
+    float threshold = getPickThreshhold();
+    Object[] candidates = directs.toArray();
+    int n = candidates.length;
+
+    // broad phase: drop renderers whose bounds are beyond the pick
+    // threshold, and visit the rest nearest bound first
+    double[] bounds = new double[n];
+    Integer[] order = new Integer[n];
+    int count = 0;
+    for (int i=0; i<n; i++) {
+      DirectManipulationRendererA3D r =
+        (DirectManipulationRendererA3D) candidates[i];
+      if (!r.getEnabled()) continue;
+      r.setLastMouseModifiers(mouseModifiers);
+      bounds[i] = lowerBound(r.getPickBounds(), ray);
+      if (bounds[i] >= threshold) continue;
+      order[count++] = i;
+    }
+    final double[] b = bounds;
+    Arrays.sort(order, 0, count, new Comparator<Integer>() {
+      public int compare(Integer i, Integer j) {
+        int c = Double.compare(b[i], b[j]);
+        return (c != 0) ? c : i.compareTo(j);
+      }
+    });
+
     DirectManipulationRendererA3D renderer = null;
+    int rendererIndex = n;
     float distance = Float.MAX_VALUE;
-    Enumeration renderers = ((Vector) directs.clone()).elements();
-    while (renderers.hasMoreElements()) {
+    for (int k=0; k<count; k++) {
+      int i = order[k];
+      if (bounds[i] > distance) break;
       DirectManipulationRendererA3D r =
-        (DirectManipulationRendererA3D) renderers.nextElement();
-      if (r.getEnabled()) {
-        r.setLastMouseModifiers(mouseModifiers);
-        float d = r.checkClose(ray.position, ray.vector);
-        if (d < distance) {
-          distance = d;
-          renderer = r;
-        }
+        (DirectManipulationRendererA3D) candidates[i];
+      float d = r.checkClose(ray.position, ray.vector);
+      // as a scan in directs order: the first of equally close renderers
+      if (d < distance || (d == distance && i < rendererIndex)) {
+        distance = d;
+        renderer = r;
+        rendererIndex = i;
       }
     }
-    if (distance < getPickThreshhold()) {
+    if (distance < threshold) {
       return renderer;
     }
     else {
@@ -945,6 +1005,30 @@ public abstract class DisplayRendererA3D extends DisplayRenderer implements Rend
     }
   }
 
+  /**
+   * A lower bound, less float error, on the distance checkClose measures
+   * from ray to a point in sphere; 0 for a null sphere, or for a ray
+   * whose direction is not of unit length.
+   */
+  private static double lowerBound(float[] sphere, VisADRay ray) {
+    if (sphere == null) return 0.0;
+    if (sphere[3] < 0f) return Double.MAX_VALUE;
+    double[] o = ray.position;
+    double[] d = ray.vector;
+    if (Math.abs(d[0] * d[0] + d[1] * d[1] + d[2] * d[2] - 1.0) > 1.0e-6) {
+      return 0.0;
+    }
+    double x = sphere[0] - o[0];
+    double y = sphere[1] - o[1];
+    double z = sphere[2] - o[2];
+    double reach = Math.sqrt(x * x + y * y + z * z) + sphere[3];
+    double dot = x * d[0] + y * d[1] + z * d[2];
+    x -= dot * d[0];
+    y -= dot * d[1];
+    z -= dot * d[2];
+    return Math.sqrt(x * x + y * y + z * z) - sphere[3] - 1.0e-5 * reach;
+  }
+
   /**
    * Check to see if there are any <CODE>DirectManipulationRenderer</CODE>s
    * in this display.
@@ -1269,12 +1353,30 @@ public abstract class DisplayRendererA3D extends DisplayRenderer implements Rend
 //      return false;      
 //   }
    
+   /** request a new frame for this display; notifications made before
+       the frame is drawn are coalesced into it */
    public void markNeedDraw() {
-      needDraw = true;
+      needDraw.set(true);
+      Ardor3D.requestFrame();
    }
    
    public boolean getNeedDraw() {
-      return needDraw;
+      return needDraw.get();
+   }
+
+   public RenderPolicyA3D getRenderPolicy() {
+      return renderPolicy;
+   }
+
+   /** set the target and background frame rates of this display's canvas */
+   public void setRenderPolicy(RenderPolicyA3D policy) {
+      renderPolicy = (policy != null) ? policy : new RenderPolicyA3D();
+      markNeedDraw();
+   }
+
+   /** return the need-draw state and clear it */
+   boolean takeNeedDraw() {
+      return needDraw.getAndSet(false);
    }
       
    void setCanvasRenderer(CanvasRenderer canvasRenderer) {
@@ -1285,8 +1387,103 @@ public abstract class DisplayRendererA3D extends DisplayRenderer implements Rend
       return canvasRenderer;
    }
 
+   /**
+    * Pick the rendered meshes under the screen point (x, y), nearest
+    * first, for read-outs on layers that have no checkClose.  A pick's
+    * DataRenderer and vertex are given by SceneA3D.getDataRenderer and
+    * SceneA3D.getVertexIndex.  May be called from any thread; see
+    * SceneA3D.doPick.
+    * @return  the picks, or null before the display is drawn
+    */
+   public PickResults pickScene(int x, int y) {
+      if (canvasRenderer == null || canvasRenderer.getScene() == null) return null;
+      Camera camera = canvasRenderer.getCamera();
+      if (camera == null) return null;
+      Ray3 ray = camera.getPickRay(new Vector2(x, y), true, null);
+      return canvasRenderer.getScene().doPick(ray);
+   }
+
+   /**
+    * Draw auto-sized contour labels added after this call in one
+    * screen-space layer, with overlapping labels hidden, instead of as
+    * one scene graph branch per label.
+    */
+   public void setScreenSpaceLabels(boolean on) {
+      screenSpaceLabels = on;
+   }
+
+   public boolean getScreenSpaceLabels() {
+      return screenSpaceLabels;
+   }
+
+   /**
+    * Draw text in the default font and in java.awt.Fonts as textured
+    * quads from the shared glyph atlas, when its TextControl has no
+    * rotation, sphere or auto size.  Off by default: the glyphs are
+    * bitmaps, and blur when zoomed far in.
+    */
+   public void setGlyphAtlasText(boolean on) {
+      glyphAtlasText = on;
+   }
+
+   public boolean getGlyphAtlasText() {
+      return glyphAtlasText;
+   }
+
+   /** return the screen-space label layer, creating it if needed */
+   public synchronized LabelLayerA3D getLabelLayer() {
+      if (labelLayer == null) {
+         labelLayer = new LabelLayerA3D(this);
+         final Node node = labelLayer.getNode();
+         Callable updateCallable = new Callable() {
+            public Object call() {
+               if (screen_locked != null) {
+                  screen_locked.attachChild(node);
+               }
+               return null;
+            }
+         };
+         queueManager.getQueue(GameTaskQueue.UPDATE).enqueue(updateCallable);
+      }
+      return labelLayer;
+   }
+
+   /**
+    * Return the thinning of flow glyphs for this display, creating it if
+    * needed.  Only glyphs made while thinning is enabled can be thinned.
+    */
+   public synchronized FlowThinningA3D getFlowThinning() {
+      if (flowThinning == null) {
+         flowThinning = new FlowThinningA3D(this);
+      }
+      return flowThinning;
+   }
+
+   /** re-place screen-space labels if the view changed; called before each frame is drawn */
+   void updateLabelLayer() {
+      LabelLayerA3D layer = labelLayer;
+      if (layer != null && canvasRenderer != null) {
+         layer.update(canvasRenderer.getCamera());
+      }
+   }
+
    public GameTaskQueueManager getTaskQueueManager() {
       return queueManager;
    }
 
+   /** return the UPDATE or RENDER queue, with its depth and timing statistics */
+   public TaskQueueA3D getTaskQueue(String name) {
+      return (TaskQueueA3D) queueManager.getQueue(name);
+   }
+
+   /**
+    * Set how long the UPDATE and RENDER queues may each run tasks in one
+    * frame; tasks left over run in the following frames, in order.
+    * @param millis budget in milliseconds, 0 to run all queued tasks
+    */
+   public void setTaskBudgetMillis(double millis) {
+      getTaskQueue(GameTaskQueue.UPDATE).setFrameBudgetMillis(millis);
+      getTaskQueue(GameTaskQueue.RENDER).setFrameBudgetMillis(millis);
+   }
+
  }
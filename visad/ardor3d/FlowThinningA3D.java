@@ -0,0 +1,283 @@
+//
+// FlowThinningA3D.java
+//
+
+/*
+VisAD system for interactive analysis and visualization of numerical
+data.  Copyright (C) 1996 - 2017 Bill Hibbard, Curtis Rueden, Tom
+Rink, Dave Glowacki, Steve Emmerson, Tom Whittaker, Don Murray, and
+Tommy Jasmin.
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Library General Public
+License as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Library General Public License for more details.
+
+You should have received a copy of the GNU Library General Public
+License along with this library; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330, Boston,
+MA 02111-1307, USA
+*/
+
+package visad.ardor3d;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+
+import com.ardor3d.scenegraph.Mesh;
+import com.ardor3d.util.GameTaskQueue;
+
+import visad.ControlEvent;
+import visad.ControlListener;
+import visad.ProjectionControl;
+import visad.VisADLineArray;
+import visad.VisADTriangleArray;
+
+/**
+   FlowThinningA3D hides flow glyphs that would be drawn closer together
+   on screen than a set spacing, keeping the spacing roughly constant as
+   the display is zoomed.<P>
+
+   Points are ranked once, when the glyphs are made, on a hierarchy of
+   grids whose cell size halves at each level: a point belongs to the
+   coarsest level at which it is the first point of its cell.  Each
+   level's points are a subset of the next finer level's.  The glyphs
+   are written coarsest level first, so showing a level is drawing a
+   prefix of the vertices, and a zoom only changes each Mesh's index
+   lengths, from one task on the UPDATE queue.  Data are not
+   re-transformed.<P>
+*/
+public class FlowThinningA3D implements ControlListener {
+
+  /** most grid levels; finer points are all shown at the last level */
+  private static final int MAX_LEVELS = 16;
+
+  private final DisplayRendererA3D dspRenderer;
+  private final ProjectionControl p_cntrl;
+
+  /** thinned meshes, dropped when their branch is discarded */
+  private final Map<Mesh, Levels> meshes = new WeakHashMap<Mesh, Levels>();
+
+  /** least distance between shown glyphs, in display coordinates at scale 1 */
+  private double spacing = 0.0;
+
+  private double scale;
+  private boolean update_queued = false;
+
+  FlowThinningA3D(DisplayRendererA3D dspRenderer) {
+    this.dspRenderer = dspRenderer;
+    this.p_cntrl = dspRenderer.getDisplay().getProjectionControl();
+    scale = ProjectionControlListener.getScale(p_cntrl.getMatrix());
+    p_cntrl.addControlListener(this);
+  }
+
+  /**
+   * Set the least distance between the flow glyphs drawn, in display
+   * coordinates seen at the initial zoom.  Glyphs already thinned are
+   * re-leveled at once; glyphs are only ranked for thinning when made
+   * while the spacing is &gt; 0, so glyphs made before then are not
+   * thinned until re-transformed.
+   * @param spacing 0 to draw every glyph
+   */
+  public synchronized void setSpacing(double spacing) {
+    this.spacing = Math.max(0.0, spacing);
+    queueUpdate();
+  }
+
+  public synchronized double getSpacing() {
+    return spacing;
+  }
+
+  /** stop following the ProjectionControl and forget all meshes */
+  synchronized void destroy() {
+    p_cntrl.removeControlListener(this);
+    meshes.clear();
+  }
+
+  public synchronized boolean isEnabled() {
+    return spacing > 0.0;
+  }
+
+  /** number of meshes being thinned */
+  public synchronized int getMeshCount() {
+    return meshes.size();
+  }
+
+  /** show mesh at the level for the current scale; mesh is not yet live */
+  synchronized void register(Mesh mesh, Levels levels) {
+    meshes.put(mesh, levels);
+    apply(mesh, levels);
+  }
+
+  public synchronized void controlChanged(ControlEvent e) {
+    double s = ProjectionControlListener.getScale(p_cntrl.getMatrix());
+    if (s != scale) {
+      scale = s;
+      queueUpdate();
+    }
+  }
+
+  /** set every mesh's level from the UPDATE queue; zooms arriving before
+      the queued task runs are folded into it */
+  private void queueUpdate() {
+    if (update_queued || meshes.isEmpty()) return;
+    update_queued = true;
+
+    Callable updateCallable = new Callable() {
+      public Object call() {
+        synchronized (FlowThinningA3D.this) {
+          update_queued = false;
+          for (Map.Entry<Mesh, Levels> entry : meshes.entrySet()) {
+            apply(entry.getKey(), entry.getValue());
+          }
+        }
+        return null;
+      }
+    };
+    GameTaskQueue uQueue = dspRenderer.getTaskQueueManager().getQueue(GameTaskQueue.UPDATE);
+    uQueue.enqueue(updateCallable);
+  }
+
+  private void apply(Mesh mesh, Levels levels) {
+    int count = levels.counts[levels.getLevel(scale, spacing)];
+    mesh.getMeshData().setIndexLengths(new int[] {count});
+  }
+
+  /**
+   * Rank the selected points (x[j], y[j]) and return their indices,
+   * coarsest level first, with the level of each position.
+   */
+  static Ranking rank(float[] x, float[] y, boolean[] selected, int len) {
+    float xmin = Float.MAX_VALUE, ymin = Float.MAX_VALUE;
+    float xmax = -Float.MAX_VALUE, ymax = -Float.MAX_VALUE;
+    int n = 0;
+    for (int j=0; j<len; j++) {
+      if (selected != null && !selected[j]) continue;
+      if (x[j] != x[j] || y[j] != y[j]) continue;
+      if (x[j] < xmin) xmin = x[j];
+      if (x[j] > xmax) xmax = x[j];
+      if (y[j] < ymin) ymin = y[j];
+      if (y[j] > ymax) ymax = y[j];
+      n++;
+    }
+    if (n == 0) return null;
+    double extent = Math.max(xmax - xmin, ymax - ymin);
+    if (!(extent > 0.0)) extent = 1.0;
+
+    // level of each point; MAX_LEVELS if it is never first in a cell
+    byte[] level = new byte[len];
+    Arrays.fill(level, (byte) MAX_LEVELS);
+    int nlevels = MAX_LEVELS;
+    Map<Long, Boolean> cells = new HashMap<Long, Boolean>();
+    for (int k=0; k<MAX_LEVELS; k++) {
+      double cell = extent / (1 << k);
+      cells.clear();
+      int firsts = 0;
+      for (int j=0; j<len; j++) {
+        if (selected != null && !selected[j]) continue;
+        if (x[j] != x[j] || y[j] != y[j]) continue;
+        long cx = (long) ((x[j] - xmin) / cell);
+        long cy = (long) ((y[j] - ymin) / cell);
+        if (cells.put((cx << 32) ^ cy, Boolean.TRUE) == null) {
+          if (level[j] > k) level[j] = (byte) k;
+          firsts++;
+        }
+      }
+      if (firsts == n) {
+        // every point is first in its cell: no finer level is needed
+        nlevels = k + 1;
+        break;
+      }
+    }
+
+    // counting sort on level, stable so each level keeps point order
+    int[] start = new int[MAX_LEVELS + 2];
+    for (int j=0; j<len; j++) {
+      if (selected != null && !selected[j]) continue;
+      if (x[j] != x[j] || y[j] != y[j]) continue;
+      start[level[j] + 1]++;
+    }
+    for (int k=0; k<=MAX_LEVELS; k++) start[k+1] += start[k];
+    int[] order = new int[n];
+    byte[] order_level = new byte[n];
+    for (int j=0; j<len; j++) {
+      if (selected != null && !selected[j]) continue;
+      if (x[j] != x[j] || y[j] != y[j]) continue;
+      int p = start[level[j]]++;
+      order[p] = j;
+      order_level[p] = level[j];
+    }
+    return new Ranking(order, order_level, Math.min(nlevels, MAX_LEVELS), extent);
+  }
+
+  /** selected points, coarsest level first */
+  static final class Ranking {
+    final int[] order;
+    final byte[] level;
+    final int nlevels;
+    final double extent;
+
+    Ranking(int[] order, byte[] level, int nlevels, double extent) {
+      this.order = order;
+      this.level = level;
+      this.nlevels = nlevels;
+      this.extent = extent;
+    }
+
+    /**
+     * Return the Levels of glyphs written in order, where offsets[p] is
+     * the first vertex of the glyph at position p and offsets[n] the
+     * vertex count.
+     */
+    Levels makeLevels(int[] offsets) {
+      int[] counts = new int[nlevels + 1];
+      int p = 0;
+      for (int k=0; k<=nlevels; k++) {
+        while (p < order.length && (k == nlevels || level[p] <= k)) p++;
+        counts[k] = offsets[p];
+      }
+      return new Levels(counts, extent);
+    }
+  }
+
+  /** vertex counts to draw for each level of a thinned array */
+  static final class Levels {
+    /** counts[k] vertices show levels 0 through k; the last shows all */
+    final int[] counts;
+    /** cell size of level 0 */
+    final double extent;
+
+    Levels(int[] counts, double extent) {
+      this.counts = counts;
+      this.extent = extent;
+    }
+
+    /** finest level whose cells, zoomed by scale, are at least spacing */
+    int getLevel(double scale, double spacing) {
+      int last = counts.length - 1;
+      if (!(spacing > 0.0)) return last;
+      double r = extent * scale / spacing;
+      if (!(r >= 1.0)) return 0;
+      int k = (int) Math.floor(Math.log(r) / Math.log(2.0));
+      return Math.min(k, last);
+    }
+  }
+
+  /** a line array written coarsest level first */
+  static final class LineArray extends VisADLineArray {
+    Levels levels;
+  }
+
+  /** a triangle array written coarsest level first */
+  static final class TriangleArray extends VisADTriangleArray {
+    Levels levels;
+  }
+}
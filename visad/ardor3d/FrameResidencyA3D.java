@@ -0,0 +1,481 @@
+//
+// FrameResidencyA3D.java
+//
+
+/*
+VisAD system for interactive analysis and visualization of numerical
+data.  Copyright (C) 1996 - 2017 Bill Hibbard, Curtis Rueden, Tom
+Rink, Dave Glowacki, Steve Emmerson, Tom Whittaker, Don Murray, and
+Tommy Jasmin.
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Library General Public
+License as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Library General Public License for more details.
+
+You should have received a copy of the GNU Library General Public
+License along with this library; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330, Boston,
+MA 02111-1307, USA
+*/
+
+package visad.ardor3d;
+
+import com.ardor3d.image.Texture;
+import com.ardor3d.renderer.state.RenderState;
+import com.ardor3d.renderer.state.TextureState;
+import com.ardor3d.scenegraph.FloatBufferData;
+import com.ardor3d.scenegraph.IndexBufferData;
+import com.ardor3d.scenegraph.Mesh;
+import com.ardor3d.scenegraph.MeshData;
+import com.ardor3d.scenegraph.Node;
+import com.ardor3d.scenegraph.Spatial;
+import com.ardor3d.util.GameTaskQueue;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import visad.Field;
+
+/**
+   FrameResidencyA3D keeps at most a fixed number of frames (and bytes)
+   of an AnimationRendererA3D's scene graph resident.  Frames far from
+   the current animation step are detached so their buffers and textures
+   can be reclaimed, and are re-transformed in the background as playback
+   approaches them.<P>
+
+   Frames ahead in the play direction are preferred over frames behind
+   it.  All scene graph changes are made from the UPDATE queue.<P>
+*/
+public class FrameResidencyA3D {
+
+  private final AnimationRendererA3D renderer;
+  private final int maxFrames;
+  private final long maxBytes;
+
+  private ExecutorService executor = null;
+
+  // frames of the current transform, replaced by each doTransform
+  private ShadowAnimationFunctionTypeA3D shadow;
+  private SwitchNode swit;
+  private VisADNodeA3D[] frames;
+  private Field field;
+  private float[] value_array;
+  private float[] default_values;
+  private AnimationControlA3D control;
+  private int generation = 0;
+  private boolean building = false;
+  private int lastSelected = -1;
+
+  private boolean[] resident;
+  private boolean[] pending;
+  private boolean[] keep;
+  private long[] bytes;
+
+  // statistics
+  private long hits = 0;
+  private long misses = 0;
+  private long evictions = 0;
+  private long rebuilds = 0;
+  private long rebuildNanos = 0;
+  private long maxRebuildNanos = 0;
+
+  /**
+   * @param renderer  the AnimationRendererA3D whose frames are managed
+   * @param maxFrames maximum number of resident frames, at least 1
+   * @param maxBytes  maximum bytes of resident geometry and textures, or
+   *                  a value &lt;= 0 for no byte limit
+   */
+  public FrameResidencyA3D(AnimationRendererA3D renderer, int maxFrames,
+                           long maxBytes) {
+    this.renderer = renderer;
+    this.maxFrames = Math.max(1, maxFrames);
+    this.maxBytes = (maxBytes > 0) ? maxBytes : Long.MAX_VALUE;
+  }
+
+  public int getMaxFrames() {
+    return maxFrames;
+  }
+
+  public long getMaxBytes() {
+    return maxBytes;
+  }
+
+  /** start managing the frames of a new transform; frames already
+      holding children (re-used frames) are counted as resident */
+  synchronized void setFrames(ShadowAnimationFunctionTypeA3D shadow,
+                              SwitchNode swit, VisADNodeA3D[] frames,
+                              Field field, float[] value_array,
+                              float[] default_values,
+                              AnimationControlA3D control) {
+    generation++;
+    this.shadow = shadow;
+    this.swit = swit;
+    this.frames = frames;
+    this.field = field;
+    this.value_array = (float[]) value_array.clone();
+    this.default_values = default_values;
+    this.control = control;
+    building = true;
+    lastSelected = -1;
+
+    int len = frames.length;
+    resident = new boolean[len];
+    pending = new boolean[len];
+    keep = new boolean[len];
+    bytes = new long[len];
+    for (int i=0; i<len; i++) {
+      if (frames[i].getNumberOfChildren() > 0) {
+        resident[i] = true;
+        bytes[i] = estimateBytes(frames[i]);
+      }
+    }
+  }
+
+  /** return true if the initial transform may build one more frame */
+  synchronized boolean admit() {
+    return getResidentFrameCount() < maxFrames && getResidentBytes() < maxBytes;
+  }
+
+  /** record a frame built by the initial transform */
+  synchronized void frameBuilt(int index, Node branch) {
+    resident[index] = true;
+    bytes[index] = estimateBytes(branch);
+  }
+
+  /** initial transform is done; apply the budget around the last
+      selected step from the UPDATE queue */
+  synchronized void finishBuild() {
+    building = false;
+    final SwitchNode sw = swit;
+    Callable updateCallable = new Callable() {
+      public Object call() {
+        int idx;
+        synchronized (FrameResidencyA3D.this) {
+          idx = (lastSelected >= 0) ? lastSelected : control.getCurrent();
+          lastSelected = -1;
+        }
+        frameSelected(sw, idx);
+        return null;
+      }
+    };
+    getUpdateQueue().enqueue(updateCallable);
+  }
+
+  /** called from the UPDATE queue when frame index of sw is selected:
+      count a hit or miss, evict frames outside the budget and schedule
+      re-transforms for frames inside it */
+  synchronized void frameSelected(SwitchNode sw, int index) {
+    if (frames == null || sw != swit || index < 0 || index >= frames.length) {
+      return;
+    }
+    if (building) {
+      lastSelected = index;
+      return;
+    }
+    // re-selection of the same step, e.g. when a held frame arrives
+    if (index == lastSelected) return;
+    lastSelected = index;
+
+    if (resident[index]) hits++;
+    else misses++;
+
+    int len = frames.length;
+    int[] order = getKeepOrder(index, len, control.getDirection());
+    long avg = getAverageBytes();
+    keep = new boolean[len];
+    int count = 0;
+    long total = 0;
+    for (int k=0; k<len; k++) {
+      int i = order[k];
+      long b = (bytes[i] > 0) ? bytes[i] : avg;
+      if (count >= maxFrames || (count > 0 && total + b > maxBytes)) break;
+      keep[i] = true;
+      count++;
+      total += b;
+    }
+
+    for (int i=0; i<len; i++) {
+      if (resident[i] && !keep[i]) {
+        frames[i].detachAllChildren();
+        control.setFrameReady(frames[i], false);
+        resident[i] = false;
+        evictions++;
+      }
+    }
+
+    for (int k=0; k<len; k++) {
+      int i = order[k];
+      if (keep[i] && !resident[i] && !pending[i]) {
+        pending[i] = true;
+        scheduleRebuild(i);
+      }
+    }
+  }
+
+  private void scheduleRebuild(final int index) {
+    if (executor == null) {
+      executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        public Thread newThread(Runnable r) {
+          Thread thread = new Thread(r, "frame residency");
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+    }
+    final int gen = generation;
+    final long start = System.nanoTime();
+    executor.execute(new Runnable() {
+      public void run() {
+        rebuild(index, gen, start);
+      }
+    });
+  }
+
+  private void rebuild(final int index, final int gen, final long start) {
+    final Node branch;
+    // the shadow tree is shared with the renderer's doTransform, so
+    // re-transform under its lock, as the initial build does
+    synchronized (renderer.transformLock) {
+      ShadowAnimationFunctionTypeA3D shadow;
+      VisADNodeA3D frame;
+      Field field;
+      float[] value_array;
+      float[] default_values;
+      synchronized (this) {
+        if (gen != generation || resident[index] || !keep[index]) {
+          if (gen == generation) pending[index] = false;
+          return;
+        }
+        shadow = this.shadow;
+        frame = frames[index];
+        field = this.field;
+        value_array = (float[]) this.value_array.clone();
+        default_values = this.default_values;
+      }
+
+      branch = (Node) shadow.makeBranch();
+      renderer.setVisADBranch(frame);
+      try {
+        shadow.recurseFrame(branch, field.getSample(index), value_array,
+                            default_values, renderer);
+      }
+      catch (Exception e) {
+        renderer.addException(e);
+        synchronized (this) {
+          if (gen == generation) pending[index] = false;
+        }
+        return;
+      }
+      finally {
+        renderer.setVisADBranch(null);
+      }
+    }
+    final long b = estimateBytes(branch);
+
+    Callable updateCallable = new Callable() {
+      public Object call() {
+        SwitchNode sw;
+        synchronized (FrameResidencyA3D.this) {
+          if (gen != generation) return null;
+          pending[index] = false;
+          if (resident[index] || !keep[index]) return null;
+          frames[index].attachChild(branch);
+          resident[index] = true;
+          bytes[index] = b;
+          long nanos = System.nanoTime() - start;
+          rebuilds++;
+          rebuildNanos += nanos;
+          if (nanos > maxRebuildNanos) maxRebuildNanos = nanos;
+          sw = swit;
+        }
+        control.frameReady(sw, index);
+        return null;
+      }
+    };
+    getUpdateQueue().enqueue(updateCallable);
+  }
+
+  /** forget all frames and stop background re-transforms */
+  synchronized void clear() {
+    generation++;
+    shadow = null;
+    swit = null;
+    frames = null;
+    field = null;
+    control = null;
+    if (executor != null) {
+      executor.shutdownNow();
+      executor = null;
+    }
+  }
+
+  private GameTaskQueue getUpdateQueue() {
+    return ((DisplayRendererA3D) renderer.getDisplayRenderer()).getTaskQueueManager().getQueue(GameTaskQueue.UPDATE);
+  }
+
+  /**
+   * Return frame indices ordered by preference for residency: the
+   * current frame, then alternately two frames ahead in the play
+   * direction for each frame behind it.
+   */
+  static int[] getKeepOrder(int current, int len, boolean forward) {
+    int[] order = new int[len];
+    boolean[] seen = new boolean[len];
+    int step = forward ? 1 : -1;
+    int n = 0;
+    int ahead = 0;
+    int behind = 1;
+    while (n < len) {
+      int idx;
+      if (ahead <= 2*behind) {
+        idx = current + step*ahead;
+        ahead++;
+      }
+      else {
+        idx = current - step*behind;
+        behind++;
+      }
+      idx = ((idx % len) + len) % len;
+      if (!seen[idx]) {
+        seen[idx] = true;
+        order[n++] = idx;
+      }
+    }
+    return order;
+  }
+
+  /** estimate the bytes held by the mesh buffers and textures under s */
+  static long estimateBytes(Spatial s) {
+    long total = 0;
+    if (s instanceof Node) {
+      List<Spatial> children = ((Node) s).getChildren();
+      if (children != null) {
+        for (int i=0; i<children.size(); i++) {
+          total += estimateBytes(children.get(i));
+        }
+      }
+    }
+    else if (s instanceof Mesh) {
+      MeshData md = ((Mesh) s).getMeshData();
+      if (md != null) {
+        total += bufferBytes(md.getVertexBuffer());
+        total += bufferBytes(md.getNormalBuffer());
+        total += bufferBytes(md.getColorBuffer());
+        List<FloatBufferData> texCoords = md.getTextureCoords();
+        if (texCoords != null) {
+          for (int i=0; i<texCoords.size(); i++) {
+            FloatBufferData tc = texCoords.get(i);
+            if (tc != null) total += bufferBytes(tc.getBuffer());
+          }
+        }
+        IndexBufferData<?> indices = md.getIndices();
+        if (indices != null) {
+          total += ((long) indices.getBufferCapacity()) * indices.getByteCount();
+        }
+      }
+    }
+    TextureState ts = (TextureState) s.getLocalRenderState(RenderState.StateType.Texture);
+    if (ts != null) {
+      for (int u=0; u<=ts.getMaxTextureIndexUsed(); u++) {
+        Texture texture = ts.getTexture(u);
+        if (texture != null && texture.getImage() != null) {
+          List<ByteBuffer> data = texture.getImage().getData();
+          if (data != null) {
+            for (int i=0; i<data.size(); i++) {
+              if (data.get(i) != null) total += data.get(i).capacity();
+            }
+          }
+        }
+      }
+    }
+    return total;
+  }
+
+  private static long bufferBytes(Buffer buffer) {
+    // mesh vertex, normal, color and texture buffers are FloatBuffers
+    return (buffer == null) ? 0 : 4L * buffer.capacity();
+  }
+
+  private long getAverageBytes() {
+    long total = 0;
+    int n = 0;
+    for (int i=0; i<bytes.length; i++) {
+      if (bytes[i] > 0) {
+        total += bytes[i];
+        n++;
+      }
+    }
+    return (n == 0) ? 0 : total / n;
+  }
+
+  public synchronized int getResidentFrameCount() {
+    if (resident == null) return 0;
+    int n = 0;
+    for (int i=0; i<resident.length; i++) {
+      if (resident[i]) n++;
+    }
+    return n;
+  }
+
+  public synchronized long getResidentBytes() {
+    if (resident == null) return 0;
+    long total = 0;
+    for (int i=0; i<resident.length; i++) {
+      if (resident[i]) total += bytes[i];
+    }
+    return total;
+  }
+
+  /** number of frame selections that found the frame resident */
+  public synchronized long getHitCount() {
+    return hits;
+  }
+
+  /** number of frame selections that had to wait for a re-transform */
+  public synchronized long getMissCount() {
+    return misses;
+  }
+
+  public synchronized double getHitRate() {
+    long n = hits + misses;
+    return (n == 0) ? 0.0 : ((double) hits) / n;
+  }
+
+  public synchronized long getEvictionCount() {
+    return evictions;
+  }
+
+  public synchronized long getRebuildCount() {
+    return rebuilds;
+  }
+
+  /** mean time from scheduling a re-transform to the frame's attachment */
+  public synchronized double getMeanRebuildMillis() {
+    return (rebuilds == 0) ? 0.0 : rebuildNanos / (1.0e6 * rebuilds);
+  }
+
+  public synchronized double getMaxRebuildMillis() {
+    return maxRebuildNanos / 1.0e6;
+  }
+
+  public synchronized void resetStatistics() {
+    hits = 0;
+    misses = 0;
+    evictions = 0;
+    rebuilds = 0;
+    rebuildNanos = 0;
+    maxRebuildNanos = 0;
+  }
+
+}
@@ -0,0 +1,394 @@
+//
+// GlyphAtlasA3D.java
+//
+
+/*
+VisAD system for interactive analysis and visualization of numerical
+data.  Copyright (C) 1996 - 2017 Bill Hibbard, Curtis Rueden, Tom
+Rink, Dave Glowacki, Steve Emmerson, Tom Whittaker, Don Murray, and
+Tommy Jasmin.
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Library General Public
+License as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Library General Public License for more details.
+
+You should have received a copy of the GNU Library General Public
+License along with this library; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330, Boston,
+MA 02111-1307, USA
+*/
+
+package visad.ardor3d;
+
+import com.ardor3d.image.Image;
+import com.ardor3d.image.ImageDataFormat;
+import com.ardor3d.image.PixelDataType;
+import com.ardor3d.image.Texture;
+import com.ardor3d.image.Texture2D;
+import com.ardor3d.renderer.IndexMode;
+import com.ardor3d.renderer.state.BlendState;
+import com.ardor3d.renderer.state.TextureState;
+import com.ardor3d.scenegraph.Mesh;
+import com.ardor3d.scenegraph.MeshData;
+import com.ardor3d.scenegraph.hint.LightCombineMode;
+import com.ardor3d.util.TextureManager;
+import com.ardor3d.util.geom.BufferUtils;
+
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+import visad.TextControl;
+import visad.VisADException;
+import visad.VisADQuadArray;
+
+/**
+   GlyphAtlasA3D renders the characters of one font into a shared
+   texture, once each, so that text can be drawn as one textured quad
+   per character.  A whole text field becomes a single TextArray, which
+   ShadowTypeA3D.addToGroup turns into one indexed, textured Mesh.<P>
+
+   Atlases are shared by all displays, one per font family and style.
+   Characters are added as they are first used; a full atlas makes
+   makeText return null so the caller can fall back to stroked text.<P>
+*/
+public class GlyphAtlasA3D {
+
+  /** atlas texture size in pixels */
+  static final int ATLAS_SIZE = 1024;
+
+  /** pixel size characters are rendered at */
+  static final float RENDER_SIZE = 32f;
+
+  /** character height, in display units, for TextControl size 1 */
+  public static final double CHAR_HEIGHT = 0.06;
+
+  private static final int PAD = 2;
+
+  private static final Map<String, GlyphAtlasA3D> atlases = new HashMap<String, GlyphAtlasA3D>();
+
+  private final Font font;
+  private final BufferedImage image;
+  private final Graphics2D graphics;
+  private final FontMetrics metrics;
+  private final Map<Character, Glyph> glyphs = new HashMap<Character, Glyph>();
+
+  private int penX = 0;
+  private int penY = 0;
+  private int version = 0;
+
+  /** one texture per atlas, whose pixels are updated in place */
+  private Texture2D texture = null;
+  private ByteBuffer pixels = null;
+  private int textureVersion = -1;
+
+  /** region drawn since the texture was last updated; empty if dirtyX0 > dirtyX1 */
+  private int dirtyX0 = ATLAS_SIZE, dirtyY0 = ATLAS_SIZE, dirtyX1 = 0, dirtyY1 = 0;
+
+  private GlyphAtlasA3D(Font font) {
+    this.font = font.deriveFont(RENDER_SIZE);
+    image = new BufferedImage(ATLAS_SIZE, ATLAS_SIZE, BufferedImage.TYPE_INT_ARGB);
+    graphics = image.createGraphics();
+    graphics.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING,
+                              RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+    graphics.setFont(this.font);
+    graphics.setColor(java.awt.Color.white);
+    metrics = graphics.getFontMetrics();
+  }
+
+  /** return the atlas for font's family and style, creating it if needed */
+  public static synchronized GlyphAtlasA3D getAtlas(Font font) {
+    if (font == null) {
+      font = new Font(Font.SANS_SERIF, Font.PLAIN, 12);
+    }
+    String key = font.getName() + "/" + font.getStyle();
+    GlyphAtlasA3D atlas = atlases.get(key);
+    if (atlas == null) {
+      atlas = new GlyphAtlasA3D(font);
+      atlases.put(key, atlas);
+    }
+    return atlas;
+  }
+
+  /** return the glyph for c, rendering it if new; null if the atlas is full */
+  synchronized Glyph getGlyph(char c) {
+    Glyph glyph = glyphs.get(c);
+    if (glyph != null) {
+      return glyph;
+    }
+    int ascent = metrics.getAscent();
+    int descent = metrics.getDescent();
+    int advance = metrics.charWidth(c);
+    int w = advance + 2 * PAD;
+    int h = ascent + descent + 2 * PAD;
+    if (penX + w > ATLAS_SIZE) {
+      penX = 0;
+      penY += h;
+    }
+    if (penY + h > ATLAS_SIZE) {
+      return null;
+    }
+    graphics.drawString(String.valueOf(c), penX + PAD, penY + PAD + ascent);
+
+    glyph = new Glyph();
+    glyph.u0 = (float) penX / ATLAS_SIZE;
+    glyph.u1 = (float) (penX + w) / ATLAS_SIZE;
+    glyph.vTop = (float) penY / ATLAS_SIZE;
+    glyph.vBottom = (float) (penY + h) / ATLAS_SIZE;
+    glyph.advance = advance;
+    glyphs.put(c, glyph);
+    dirtyX0 = Math.min(dirtyX0, penX);
+    dirtyY0 = Math.min(dirtyY0, penY);
+    dirtyX1 = Math.max(dirtyX1, penX + w);
+    dirtyY1 = Math.max(dirtyY1, penY + h);
+    penX += w;
+    version++;
+    return glyph;
+  }
+
+  /**
+   * The atlas texture.  Characters added since the last call are copied
+   * into its pixels and the texture is marked dirty, so it is uploaded
+   * again under the same texture id rather than replaced.
+   */
+  synchronized Texture2D getTexture() {
+    if (texture == null) {
+      pixels = BufferUtils.createByteBuffer(4 * ATLAS_SIZE * ATLAS_SIZE);
+      copyPixels(0, 0, ATLAS_SIZE, ATLAS_SIZE);
+      Image aImage = new Image(ImageDataFormat.RGBA, PixelDataType.UnsignedByte,
+                               ATLAS_SIZE, ATLAS_SIZE, pixels, null);
+      texture = (Texture2D) TextureManager.loadFromImage(aImage,
+                    Texture.MinificationFilter.BilinearNoMipMaps);
+      texture.setMagnificationFilter(Texture.MagnificationFilter.Bilinear);
+      textureVersion = version;
+      dirtyX0 = dirtyY0 = ATLAS_SIZE;
+      dirtyX1 = dirtyY1 = 0;
+    }
+    else if (textureVersion != version) {
+      if (dirtyX0 < dirtyX1 && dirtyY0 < dirtyY1) {
+        copyPixels(dirtyX0, dirtyY0, Math.min(dirtyX1, ATLAS_SIZE) - dirtyX0,
+                   Math.min(dirtyY1, ATLAS_SIZE) - dirtyY0);
+      }
+      texture.getTextureKey().setDirty();
+      textureVersion = version;
+      dirtyX0 = dirtyY0 = ATLAS_SIZE;
+      dirtyX1 = dirtyY1 = 0;
+    }
+    return texture;
+  }
+
+  /** copy the alpha of the image region (x, y, w, h) into pixels, as white */
+  private void copyPixels(int x, int y, int w, int h) {
+    int[] argb = image.getRGB(x, y, w, h, null, 0, w);
+    for (int j = 0; j < h; j++) {
+      int p = 4 * ((y + j) * ATLAS_SIZE + x);
+      for (int i = 0; i < w; i++) {
+        pixels.put(p++, (byte) 255);
+        pixels.put(p++, (byte) 255);
+        pixels.put(p++, (byte) 255);
+        pixels.put(p++, (byte) (argb[j * w + i] >>> 24));
+      }
+    }
+  }
+
+  /**
+   * Lay out text_values at spatial_values as one TextArray, or return
+   * null if the TextControl uses options drawn only by stroked text
+   * (rotation, sphere, auto size), the font is a HersheyFont, or the
+   * atlas has no room for a character.  The default font is drawn in
+   * the atlas's default java.awt.Font.
+   */
+  public static TextArray makeText(String[] text_values, TextControl text_control,
+         float[][] spatial_values, byte[][] color_values, boolean[][] range_select)
+         throws VisADException {
+    if (text_values == null || spatial_values == null || text_control == null) {
+      return null;
+    }
+    Object f = text_control.getFont();
+    if (f != null && !(f instanceof Font)) {
+      return null;
+    }
+    if (text_control.getRotation() != 0.0 || text_control.getSphere() ||
+        text_control.getAutoSize()) {
+      return null;
+    }
+    GlyphAtlasA3D atlas = getAtlas((Font) f);
+
+    double scale = CHAR_HEIGHT * text_control.getSize() / atlas.metrics.getAscent();
+    TextControl.Justification just = text_control.getJustification();
+    float ascent = atlas.metrics.getAscent();
+    float descent = atlas.metrics.getDescent();
+    // baseline offset for the vertical justification; BOTTOM puts the
+    // baseline at the point, as stroked text does
+    TextControl.Justification vjust = text_control.getVerticalJustification();
+    float rise = (vjust == TextControl.Justification.TOP) ? -ascent :
+                 (vjust == TextControl.Justification.CENTER) ? -ascent / 2 : 0;
+
+    int n = text_values.length;
+    boolean[] select = (range_select != null && range_select[0] != null) ? range_select[0] : null;
+    int quads = 0;
+    for (int i = 0; i < n; i++) {
+      if (text_values[i] != null && isSelected(select, i)) {
+        quads += text_values[i].length();
+      }
+    }
+    if (quads == 0) {
+      return null;
+    }
+
+    float[] coords = new float[12 * quads];
+    float[] tex = new float[8 * quads];
+    byte[] colors = new byte[16 * quads];
+    int q = 0;
+    for (int i = 0; i < n; i++) {
+      String text = text_values[i];
+      if (text == null || !isSelected(select, i)) continue;
+      int len = text.length();
+
+      Glyph[] line = new Glyph[len];
+      float width = 0;
+      for (int k = 0; k < len; k++) {
+        line[k] = atlas.getGlyph(text.charAt(k));
+        if (line[k] == null) {
+          return null;
+        }
+        width += line[k].advance;
+      }
+
+      float x = spatial_values[0][(spatial_values[0].length == 1) ? 0 : i];
+      float y = spatial_values[1][(spatial_values[1].length == 1) ? 0 : i];
+      float z = spatial_values[2][(spatial_values[2].length == 1) ? 0 : i];
+      float pen = (just == TextControl.Justification.CENTER) ? -width / 2 :
+                  (just == TextControl.Justification.RIGHT) ? -width : 0;
+
+      byte r = (byte) 255, g = (byte) 255, b = (byte) 255, a = (byte) 255;
+      if (color_values != null) {
+        int ci = (color_values[0].length == 1) ? 0 : i;
+        r = color_values[0][ci];
+        g = color_values[1][ci];
+        b = color_values[2][ci];
+        if (color_values.length > 3) a = color_values[3][ci];
+      }
+
+      float bottom = (float) (y + (rise - descent - PAD) * scale);
+      float top = (float) (y + (rise + ascent + PAD) * scale);
+      for (int k = 0; k < len; k++) {
+        Glyph glyph = line[k];
+        float x0 = (float) (x + (pen - PAD) * scale);
+        float x1 = (float) (x + (pen + glyph.advance + PAD) * scale);
+        pen += glyph.advance;
+
+        int c = 12 * q;
+        coords[c] = x0;      coords[c + 1] = bottom;  coords[c + 2] = z;
+        coords[c + 3] = x1;  coords[c + 4] = bottom;  coords[c + 5] = z;
+        coords[c + 6] = x1;  coords[c + 7] = top;     coords[c + 8] = z;
+        coords[c + 9] = x0;  coords[c + 10] = top;    coords[c + 11] = z;
+
+        int t = 8 * q;
+        tex[t] = glyph.u0;      tex[t + 1] = glyph.vBottom;
+        tex[t + 2] = glyph.u1;  tex[t + 3] = glyph.vBottom;
+        tex[t + 4] = glyph.u1;  tex[t + 5] = glyph.vTop;
+        tex[t + 6] = glyph.u0;  tex[t + 7] = glyph.vTop;
+
+        for (int v = 0; v < 4; v++) {
+          int cc = 16 * q + 4 * v;
+          colors[cc] = r;
+          colors[cc + 1] = g;
+          colors[cc + 2] = b;
+          colors[cc + 3] = a;
+        }
+        q++;
+      }
+    }
+
+    TextArray array = new TextArray(atlas);
+    array.vertexCount = 4 * quads;
+    array.coordinates = coords;
+    array.texCoords = tex;
+    array.colors = colors;
+    return array;
+  }
+
+  private static boolean isSelected(boolean[] select, int i) {
+    if (select == null) return true;
+    return select[(select.length == 1) ? 0 : i];
+  }
+
+  /** one indexed, textured Mesh for array */
+  static Mesh makeMesh(TextArray array) {
+    int quads = array.vertexCount / 4;
+    int[] indices = new int[6 * quads];
+    for (int q = 0; q < quads; q++) {
+      int v = 4 * q;
+      int i = 6 * q;
+      indices[i] = v;
+      indices[i + 1] = v + 1;
+      indices[i + 2] = v + 2;
+      indices[i + 3] = v;
+      indices[i + 4] = v + 2;
+      indices[i + 5] = v + 3;
+    }
+    float[] colors = new float[array.colors.length];
+    for (int i = 0; i < colors.length; i++) {
+      colors[i] = Byte.toUnsignedInt(array.colors[i]) / 255f;
+    }
+
+    MeshData meshData = new MeshData();
+    meshData.setIndexMode(IndexMode.Triangles);
+    meshData.setVertexBuffer(BufferUtils.createFloatBuffer(array.coordinates));
+    meshData.setTextureBuffer(BufferUtils.createFloatBuffer(array.texCoords), 0);
+    meshData.setColorBuffer(BufferUtils.createFloatBuffer(colors));
+    IntBuffer ibuf = BufferUtils.createIntBuffer(indices.length);
+    ibuf.put(indices);
+    ibuf.rewind();
+    meshData.setIndexBuffer(ibuf);
+
+    Mesh mesh = new Mesh("text");
+    mesh.setMeshData(meshData);
+
+    TextureState ts = new TextureState();
+    ts.setEnabled(true);
+    ts.setTexture(array.atlas.getTexture());
+    mesh.setRenderState(ts);
+
+    BlendState blend = new BlendState();
+    blend.setEnabled(true);
+    blend.setBlendEnabled(true);
+    blend.setSourceFunction(BlendState.SourceFunction.SourceAlpha);
+    blend.setDestinationFunction(BlendState.DestinationFunction.OneMinusSourceAlpha);
+    mesh.setRenderState(blend);
+
+    mesh.getSceneHints().setLightCombineMode(LightCombineMode.Off);
+    mesh.updateModelBound();
+    return mesh;
+  }
+
+  static final class Glyph {
+    float u0, u1, vTop, vBottom;
+    int advance;
+  }
+
+  /**
+     Text laid out as one quad per character, with atlas texture
+     coordinates.  Drawn untextured by code that does not know about it.
+  */
+  public static class TextArray extends VisADQuadArray {
+    final GlyphAtlasA3D atlas;
+
+    TextArray(GlyphAtlasA3D atlas) {
+      this.atlas = atlas;
+    }
+  }
+}
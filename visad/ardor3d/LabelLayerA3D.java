@@ -0,0 +1,730 @@
+//
+// LabelLayerA3D.java
+//
+
+/*
+VisAD system for interactive analysis and visualization of numerical
+data.  Copyright (C) 1996 - 2017 Bill Hibbard, Curtis Rueden, Tom
+Rink, Dave Glowacki, Steve Emmerson, Tom Whittaker, Don Murray, and
+Tommy Jasmin.
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Library General Public
+License as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Library General Public License for more details.
+
+You should have received a copy of the GNU Library General Public
+License along with this library; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330, Boston,
+MA 02111-1307, USA
+*/
+
+package visad.ardor3d;
+
+import com.ardor3d.renderer.Camera;
+import com.ardor3d.renderer.IndexMode;
+import com.ardor3d.renderer.queue.RenderBucketType;
+import com.ardor3d.renderer.state.RenderState;
+import com.ardor3d.renderer.state.WireframeState;
+import com.ardor3d.renderer.state.ZBufferState;
+import com.ardor3d.scenegraph.Mesh;
+import com.ardor3d.scenegraph.MeshData;
+import com.ardor3d.scenegraph.Node;
+import com.ardor3d.scenegraph.Spatial;
+import com.ardor3d.scenegraph.hint.CullHint;
+import com.ardor3d.scenegraph.hint.LightCombineMode;
+import com.ardor3d.util.geom.BufferUtils;
+
+import java.lang.ref.WeakReference;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import visad.GraphicsModeControl;
+import visad.VisADGeometryArray;
+import visad.VisADLineArray;
+import visad.VisADTriangleArray;
+
+/**
+   LabelLayerA3D draws contour labels in screen space, in one line mesh
+   and one triangle mesh under the screen locked branch of a
+   DisplayRendererA3D, instead of one TransformNode and Mesh per label.<P>
+
+   Label anchors are projected only when the view, the canvas size or
+   the set of visible labels changes.  Each placement re-projects the
+   labels, so they turn with the view, scaled to keep the pixel size
+   they had when first placed.  Labels that would overlap
+   an already placed label are hidden, first registered first placed,
+   using a uniform grid of screen cells.<P>
+
+   A label is visible when the group it was registered with is attached
+   to the display and selected by every SwitchNode above it, so
+   animation steps show their own labels.  Labels of groups that have
+   been detached are dropped, and groups are only weakly held, so the
+   labels of a group that was never attached go when the group does.<P>
+
+   main checks the placement math, which needs no GL context.<P>
+*/
+public class LabelLayerA3D {
+
+  /** pixels added around each label before overlap testing */
+  public static final int DEFAULT_LABEL_PADDING = 2;
+
+  /** side of a collision grid cell in pixels */
+  static final int CELL_SIZE = 32;
+
+  private final DisplayRendererA3D dspRenderer;
+
+  private final Node layer = new Node();
+  private final Mesh lines = new Mesh();
+  private final Mesh triangles = new Mesh();
+  private final WireframeState lineState;
+
+  /** labels by the group they were added to, in registration order;
+      Nodes do not override equals, so the weak map is by identity */
+  private final Map<Node, LabelGroup> groups = new WeakHashMap<Node, LabelGroup>();
+  private final List<LabelGroup> order = new ArrayList<LabelGroup>();
+
+  private boolean dirty = true;
+  private int padding = DEFAULT_LABEL_PADDING;
+
+  // view of the last placement
+  private final double[] displayMatrix = new double[16];
+  private final double[] cameraMatrix = new double[16];
+  private final double[] lastDisplayMatrix = new double[16];
+  private final double[] lastCameraMatrix = new double[16];
+  private int lastWidth = -1;
+  private int lastHeight = -1;
+
+  private float[] lineVerts = new float[0];
+  private float[] lineColors = new float[0];
+  private float[] triVerts = new float[0];
+  private float[] triColors = new float[0];
+
+  private int placedCount = 0;
+  private int culledCount = 0;
+
+  LabelLayerA3D(DisplayRendererA3D dspRenderer) {
+    this.dspRenderer = dspRenderer;
+
+    layer.setName("LabelLayer");
+    layer.getSceneHints().setRenderBucketType(RenderBucketType.Ortho);
+    layer.getSceneHints().setLightCombineMode(LightCombineMode.Off);
+    layer.getSceneHints().setCullHint(CullHint.Never);
+
+    ZBufferState zbuf = new ZBufferState();
+    zbuf.setEnabled(false);
+    layer.setRenderState(zbuf);
+
+    MeshData meshData = new MeshData();
+    meshData.setIndexMode(IndexMode.Lines);
+    lines.setMeshData(meshData);
+    lineState = (WireframeState) RenderState.createState(RenderState.StateType.Wireframe);
+    lines.setRenderState(lineState);
+
+    meshData = new MeshData();
+    meshData.setIndexMode(IndexMode.Triangles);
+    triangles.setMeshData(meshData);
+
+    lines.getSceneHints().setCullHint(CullHint.Always);
+    triangles.getSceneHints().setCullHint(CullHint.Always);
+    layer.attachChild(lines);
+    layer.attachChild(triangles);
+  }
+
+  /** the Node to attach under the screen locked branch */
+  Node getNode() {
+    return layer;
+  }
+
+  /**
+   * Add a label to be drawn while group is visible.
+   * @param group      the group the label belongs to
+   * @param label      label geometry, in display coordinates
+   * @param anchor     the point the label is placed at
+   * @param mode       graphics mode for the label lines
+   * @return false if this kind of geometry cannot be drawn by the layer
+   */
+  public synchronized boolean addLabel(Object group, VisADGeometryArray label,
+         VisADGeometryArray anchor, GraphicsModeControl mode,
+         float constant_alpha, float[] constant_color) {
+    if (!(group instanceof Node) || label == null || anchor == null ||
+        anchor.coordinates == null || anchor.coordinates.length < 3) {
+      return false;
+    }
+    boolean isLine = label instanceof VisADLineArray;
+    if (!isLine && !(label instanceof VisADTriangleArray)) {
+      return false;
+    }
+    if (label.vertexCount <= 0) {
+      return true;
+    }
+
+    LabelGroup lg = groups.get(group);
+    if (lg == null) {
+      lg = new LabelGroup((Node) group);
+      groups.put((Node) group, lg);
+      order.add(lg);
+    }
+    lg.labels.add(new Label(label, anchor.coordinates, isLine,
+                            makeColors(label, constant_alpha, constant_color)));
+    if (isLine) {
+      lineState.setLineWidth(mode.getLineWidth());
+    }
+    dirty = true;
+    return true;
+  }
+
+  /** remove the labels added with group */
+  public synchronized void removeLabels(Object group) {
+    LabelGroup lg = groups.remove(group);
+    if (lg != null) {
+      order.remove(lg);
+      dirty = true;
+      dspRenderer.markNeedDraw();
+    }
+  }
+
+  /** hand the labels added with one group over to another */
+  public synchronized void moveLabels(Object from, Object to) {
+    LabelGroup src = groups.get(from);
+    if (src == null || from == to || !(to instanceof Node)) return;
+    removeLabels(from);
+    LabelGroup dst = groups.get(to);
+    if (dst == null) {
+      dst = new LabelGroup((Node) to);
+      groups.put((Node) to, dst);
+      order.add(dst);
+    }
+    dst.labels.addAll(src.labels);
+  }
+
+  public synchronized void clear() {
+    groups.clear();
+    order.clear();
+    dirty = true;
+    dspRenderer.markNeedDraw();
+  }
+
+  /** pixels kept free around each label */
+  public synchronized void setPadding(int pixels) {
+    padding = Math.max(0, pixels);
+    dirty = true;
+    dspRenderer.markNeedDraw();
+  }
+
+  public int getPadding() {
+    return padding;
+  }
+
+  /** number of labels drawn by the last placement */
+  public int getPlacedCount() {
+    return placedCount;
+  }
+
+  /** number of visible labels hidden by overlap or clipping in the last placement */
+  public int getCulledCount() {
+    return culledCount;
+  }
+
+  /**
+   * Re-place the labels if the view or the visible labels changed since
+   * the last frame. Runs on the rendering thread before the scene is drawn.
+   */
+  synchronized void update(Camera camera) {
+    if (camera == null || (order.isEmpty() && placedCount == 0 && !dirty)) {
+      return;
+    }
+    TransformNode trans = dspRenderer.getTransformNode();
+    Node root = dspRenderer.getRoot();
+    if (trans == null || root == null) {
+      return;
+    }
+
+    // visibility of each group; drop groups that have been detached
+    boolean changed = dirty;
+    for (Iterator<LabelGroup> it = order.iterator(); it.hasNext();) {
+      LabelGroup lg = it.next();
+      Node group = lg.group.get();
+      if (group == null) {
+        // never attached, and since discarded
+        it.remove();
+        changed = true;
+        continue;
+      }
+      int state = getVisibility(group, root);
+      if (state < 0) {
+        if (lg.attached) {
+          it.remove();
+          groups.remove(group);
+          changed = true;
+        }
+        state = 0;
+      }
+      else {
+        lg.attached = true;
+      }
+      boolean visible = (state > 0);
+      if (visible != lg.visible) {
+        lg.visible = visible;
+        changed = true;
+      }
+    }
+
+    trans.getTransform().getHomogeneousMatrix(null).toArray(displayMatrix);
+    camera.getModelViewProjectionMatrix().toArray(cameraMatrix);
+    int width = camera.getWidth();
+    int height = camera.getHeight();
+    if (!changed && width == lastWidth && height == lastHeight &&
+        Arrays.equals(displayMatrix, lastDisplayMatrix) &&
+        Arrays.equals(cameraMatrix, lastCameraMatrix)) {
+      return;
+    }
+    dirty = false;
+    lastWidth = width;
+    lastHeight = height;
+    System.arraycopy(displayMatrix, 0, lastDisplayMatrix, 0, 16);
+    System.arraycopy(cameraMatrix, 0, lastCameraMatrix, 0, 16);
+
+    place(width, height);
+  }
+
+  private void place(int width, int height) {
+    CollisionGrid grid = new CollisionGrid(width, height, CELL_SIZE);
+    double[] screen = new double[3];
+    int nLine = 0;
+    int nTri = 0;
+    int placed = 0;
+    int culled = 0;
+    double scale = getScale(displayMatrix);
+
+    for (LabelGroup lg : order) {
+      if (!lg.visible) continue;
+      for (Label label : lg.labels) {
+        if (!project(displayMatrix, cameraMatrix, label.anchor[0], label.anchor[1],
+                     label.anchor[2], width, height, screen)) {
+          culled++;
+          continue;
+        }
+        if (!label.makeOffsets(screen, scale)) {
+          culled++;
+          continue;
+        }
+        double sx = screen[0];
+        double sy = screen[1];
+        if (!grid.add(sx + label.bounds[0] - padding, sy + label.bounds[1] - padding,
+                      sx + label.bounds[2] + padding, sy + label.bounds[3] + padding)) {
+          culled++;
+          continue;
+        }
+        placed++;
+
+        int n = label.offsets.length;
+        if (label.isLine) {
+          lineVerts = ensure(lineVerts, nLine + n);
+          lineColors = ensure(lineColors, (nLine + n) / 3 * 4);
+          for (int k = 0; k < n; k += 3) {
+            lineVerts[nLine + k] = (float) (sx + label.offsets[k]);
+            lineVerts[nLine + k + 1] = (float) (sy + label.offsets[k + 1]);
+            lineVerts[nLine + k + 2] = 0f;
+          }
+          System.arraycopy(label.colors, 0, lineColors, nLine / 3 * 4, n / 3 * 4);
+          nLine += n;
+        }
+        else {
+          triVerts = ensure(triVerts, nTri + n);
+          triColors = ensure(triColors, (nTri + n) / 3 * 4);
+          for (int k = 0; k < n; k += 3) {
+            triVerts[nTri + k] = (float) (sx + label.offsets[k]);
+            triVerts[nTri + k + 1] = (float) (sy + label.offsets[k + 1]);
+            triVerts[nTri + k + 2] = 0f;
+          }
+          System.arraycopy(label.colors, 0, triColors, nTri / 3 * 4, n / 3 * 4);
+          nTri += n;
+        }
+      }
+    }
+
+    setMesh(lines, lineVerts, lineColors, nLine);
+    setMesh(triangles, triVerts, triColors, nTri);
+    placedCount = placed;
+    culledCount = culled;
+  }
+
+  private static void setMesh(Mesh mesh, float[] verts, float[] colors, int n) {
+    if (n == 0) {
+      mesh.getSceneHints().setCullHint(CullHint.Always);
+      return;
+    }
+    MeshData meshData = mesh.getMeshData();
+    FloatBuffer vbuf = meshData.getVertexBuffer();
+    if (vbuf == null || vbuf.capacity() < n) {
+      vbuf = BufferUtils.createFloatBuffer(verts.length);
+    }
+    vbuf.clear();
+    vbuf.put(verts, 0, n);
+    vbuf.flip();
+    meshData.setVertexBuffer(vbuf);
+
+    int nc = n / 3 * 4;
+    FloatBuffer cbuf = meshData.getColorBuffer();
+    if (cbuf == null || cbuf.capacity() < nc) {
+      cbuf = BufferUtils.createFloatBuffer(colors.length);
+    }
+    cbuf.clear();
+    cbuf.put(colors, 0, nc);
+    cbuf.flip();
+    meshData.setColorBuffer(cbuf);
+
+    mesh.updateModelBound();
+    mesh.getSceneHints().setCullHint(CullHint.Inherit);
+  }
+
+  private static float[] ensure(float[] array, int length) {
+    if (array.length >= length) return array;
+    return Arrays.copyOf(array, Math.max(length, 2 * array.length));
+  }
+
+  /** scale of a display matrix, as the length of its first column */
+  static double getScale(double[] display) {
+    return Math.sqrt(display[0] * display[0] + display[4] * display[4] +
+                     display[8] * display[8]);
+  }
+
+  /**
+   * Return 1 if node is attached below root and shown by every
+   * SwitchNode above it, 0 if attached but hidden, -1 if not attached.
+   */
+  static int getVisibility(Spatial node, Node root) {
+    int visible = 1;
+    Spatial child = node;
+    Node parent = child.getParent();
+    while (parent != null) {
+      if (child.getSceneHints().getCullHint() == CullHint.Always) {
+        visible = 0;
+      }
+      if (parent instanceof SwitchNode &&
+          !((SwitchNode) parent).getVisible(parent.getChildIndex(child))) {
+        visible = 0;
+      }
+      if (parent == root) {
+        return visible;
+      }
+      child = parent;
+      parent = child.getParent();
+    }
+    return -1;
+  }
+
+  /**
+   * Project a point in display coordinates to canvas pixels, with the
+   * origin at the lower left as in the Ortho render bucket.
+   * @param display  VisAD display matrix, row major, applied to column
+   *                 vectors (as ProjectionControl.getMatrix())
+   * @param camera   camera model view projection matrix, row major,
+   *                 applied to row vectors (as Ardor3D Matrix4.toArray)
+   * @param store    receives pixel x, pixel y and depth in [0, 1]
+   * @return false if the point is behind the eye or outside the clip volume
+   */
+  static boolean project(double[] display, double[] camera, double x, double y,
+                         double z, int width, int height, double[] store) {
+    double wx = display[0] * x + display[1] * y + display[2] * z + display[3];
+    double wy = display[4] * x + display[5] * y + display[6] * z + display[7];
+    double wz = display[8] * x + display[9] * y + display[10] * z + display[11];
+    double ww = display[12] * x + display[13] * y + display[14] * z + display[15];
+
+    double cx = wx * camera[0] + wy * camera[4] + wz * camera[8] + ww * camera[12];
+    double cy = wx * camera[1] + wy * camera[5] + wz * camera[9] + ww * camera[13];
+    double cz = wx * camera[2] + wy * camera[6] + wz * camera[10] + ww * camera[14];
+    double cw = wx * camera[3] + wy * camera[7] + wz * camera[11] + ww * camera[15];
+    if (cw <= 0) {
+      return false;
+    }
+    double nx = cx / cw;
+    double ny = cy / cw;
+    double nz = cz / cw;
+    if (nx < -1 || nx > 1 || ny < -1 || ny > 1 || nz < -1 || nz > 1) {
+      return false;
+    }
+    store[0] = (nx + 1) * 0.5 * width;
+    store[1] = (ny + 1) * 0.5 * height;
+    store[2] = (nz + 1) * 0.5;
+    return true;
+  }
+
+  private float[] makeColors(VisADGeometryArray label, float constant_alpha,
+                             float[] constant_color) {
+    // same defaults as ShadowTypeA3D.addToGroup
+    float af = 0.0f;
+    if (constant_alpha == 1.0f) {
+      af = 1.0f;
+    }
+    else if (!Float.isNaN(constant_alpha)) {
+      af = constant_alpha;
+    }
+    float r = 0f, g = 0f, b = 0f;
+    if (constant_color != null && constant_color.length == 3) {
+      r = constant_color[0];
+      g = constant_color[1];
+      b = constant_color[2];
+    }
+
+    int n = label.vertexCount;
+    float[] colors = new float[n * 4];
+    byte[] c = label.colors;
+    int stride = (c == null) ? 0 : (c.length == n * 3) ? 3 : 4;
+    for (int k = 0; k < n; k++) {
+      if (stride == 0) {
+        colors[k * 4] = r;
+        colors[k * 4 + 1] = g;
+        colors[k * 4 + 2] = b;
+        colors[k * 4 + 3] = af;
+      }
+      else {
+        colors[k * 4] = Byte.toUnsignedInt(c[k * stride]) / 255f;
+        colors[k * 4 + 1] = Byte.toUnsignedInt(c[k * stride + 1]) / 255f;
+        colors[k * 4 + 2] = Byte.toUnsignedInt(c[k * stride + 2]) / 255f;
+        colors[k * 4 + 3] = (stride == 4) ? Byte.toUnsignedInt(c[k * 4 + 3]) / 255f : 1f;
+      }
+    }
+    return colors;
+  }
+
+  private static class LabelGroup {
+    final WeakReference<Node> group;
+    final List<Label> labels = new ArrayList<Label>();
+    boolean attached = false;
+    boolean visible = false;
+
+    LabelGroup(Node group) {
+      this.group = new WeakReference<Node>(group);
+    }
+  }
+
+  private class Label {
+    final float[] coordinates;
+    final float[] anchor;
+    final boolean isLine;
+    final float[] colors;
+
+    /** pixel offsets of the vertices from the anchor in the last placement */
+    double[] offsets;
+    /** display scale when first placed, 0 before */
+    double firstScale = 0;
+    /** min x, min y, max x, max y of offsets */
+    final double[] bounds = new double[4];
+
+    Label(VisADGeometryArray label, float[] anchor, boolean isLine, float[] colors) {
+      this.coordinates = label.coordinates;
+      this.anchor = new float[] {anchor[0], anchor[1], anchor[2]};
+      this.isLine = isLine;
+      this.colors = colors;
+    }
+
+    /** project the label's shape in the current view, sized as when
+        first placed */
+    boolean makeOffsets(double[] anchorScreen, double scale) {
+      if (firstScale <= 0) {
+        firstScale = scale;
+      }
+      double f = (scale > 0) ? firstScale / scale : 1;
+      double[] off = new double[coordinates.length];
+      if (!LabelLayerA3D.makeOffsets(displayMatrix, cameraMatrix, coordinates,
+                                     anchorScreen, f, lastWidth, lastHeight,
+                                     off, bounds)) {
+        return false;
+      }
+      offsets = off;
+      return true;
+    }
+  }
+
+  /**
+   * Set off to the pixel offsets of the projected coordinates from
+   * anchorScreen, times f, and bounds to their min x, min y, max x and
+   * max y.
+   * @return false if a vertex does not project
+   */
+  static boolean makeOffsets(double[] display, double[] camera,
+                             float[] coordinates, double[] anchorScreen,
+                             double f, int width, int height,
+                             double[] off, double[] bounds) {
+    double[] screen = new double[3];
+    bounds[0] = bounds[1] = Double.MAX_VALUE;
+    bounds[2] = bounds[3] = -Double.MAX_VALUE;
+    for (int k = 0; k < coordinates.length; k += 3) {
+      if (!project(display, camera, coordinates[k], coordinates[k + 1],
+                   coordinates[k + 2], width, height, screen)) {
+        return false;
+      }
+      off[k] = f * (screen[0] - anchorScreen[0]);
+      off[k + 1] = f * (screen[1] - anchorScreen[1]);
+      bounds[0] = Math.min(bounds[0], off[k]);
+      bounds[1] = Math.min(bounds[1], off[k + 1]);
+      bounds[2] = Math.max(bounds[2], off[k]);
+      bounds[3] = Math.max(bounds[3], off[k + 1]);
+    }
+    return true;
+  }
+
+  /**
+     Screen rectangles already taken, bucketed in square cells so a new
+     rectangle is only tested against those sharing a cell with it.
+  */
+  static class CollisionGrid {
+    private final int cellSize;
+    private final int cols;
+    private final int rows;
+    private final List<double[]>[] cells;
+
+    @SuppressWarnings("unchecked")
+    CollisionGrid(int width, int height, int cellSize) {
+      this.cellSize = cellSize;
+      cols = Math.max(1, (width + cellSize - 1) / cellSize);
+      rows = Math.max(1, (height + cellSize - 1) / cellSize);
+      cells = new List[cols * rows];
+    }
+
+    /**
+     * Take the rectangle if it overlaps no rectangle taken before.
+     * @return true if it was taken
+     */
+    boolean add(double minX, double minY, double maxX, double maxY) {
+      int c0 = clamp((int) Math.floor(minX / cellSize), cols);
+      int c1 = clamp((int) Math.floor(maxX / cellSize), cols);
+      int r0 = clamp((int) Math.floor(minY / cellSize), rows);
+      int r1 = clamp((int) Math.floor(maxY / cellSize), rows);
+
+      for (int r = r0; r <= r1; r++) {
+        for (int c = c0; c <= c1; c++) {
+          List<double[]> cell = cells[r * cols + c];
+          if (cell == null) continue;
+          for (double[] rect : cell) {
+            if (minX < rect[2] && rect[0] < maxX && minY < rect[3] && rect[1] < maxY) {
+              return false;
+            }
+          }
+        }
+      }
+
+      double[] rect = new double[] {minX, minY, maxX, maxY};
+      for (int r = r0; r <= r1; r++) {
+        for (int c = c0; c <= c1; c++) {
+          int idx = r * cols + c;
+          if (cells[idx] == null) {
+            cells[idx] = new ArrayList<double[]>(4);
+          }
+          cells[idx].add(rect);
+        }
+      }
+      return true;
+    }
+
+    private static int clamp(int i, int n) {
+      return (i < 0) ? 0 : (i >= n) ? n - 1 : i;
+    }
+  }
+
+  /**
+   * Check the placement math without a display: CollisionGrid against
+   * a brute force overlap test on random rectangles, and label offsets
+   * against a change of display scale and translation.  Exits with
+   * status 1 on any failure.
+   */
+  public static void main(String[] args) {
+    int failures = 0;
+
+    // rectangles that only touch do not overlap
+    CollisionGrid grid = new CollisionGrid(100, 100, CELL_SIZE);
+    if (!grid.add(0, 0, 10, 10) || !grid.add(10, 0, 20, 10) ||
+        !grid.add(0, 10, 10, 20) || grid.add(5, 5, 15, 15)) {
+      failures++;
+      System.out.println("CollisionGrid: touching or overlapping rectangles");
+    }
+
+    java.util.Random random = new java.util.Random(1);
+    for (int t = 0; t < 100; t++) {
+      int width = 1 + random.nextInt(500);
+      int height = 1 + random.nextInt(500);
+      grid = new CollisionGrid(width, height, CELL_SIZE);
+      List<double[]> taken = new ArrayList<double[]>();
+      for (int r = 0; r < 200; r++) {
+        // some partly or wholly off the canvas, some spanning cells
+        double x = random.nextDouble() * (width + 100) - 50;
+        double y = random.nextDouble() * (height + 100) - 50;
+        double w = random.nextDouble() * 3 * CELL_SIZE;
+        double h = random.nextDouble() * CELL_SIZE;
+        boolean free = true;
+        for (double[] rect : taken) {
+          if (x < rect[2] && rect[0] < x + w && y < rect[3] && rect[1] < y + h) {
+            free = false;
+            break;
+          }
+        }
+        if (free) taken.add(new double[] {x, y, x + w, y + h});
+        if (grid.add(x, y, x + w, y + h) != free) {
+          failures++;
+          System.out.println("CollisionGrid: " + width + " x " + height +
+                             " rectangle " + r + " should be " +
+                             (free ? "taken" : "refused"));
+        }
+      }
+    }
+
+    // offsets keep their first pixel size as the display scale changes
+    double[] camera = {1, 0, 0, 0,  0, 1, 0, 0,  0, 0, 1, 0,  0, 0, 0, 1};
+    float[] anchor = {0.1f, -0.2f, 0f};
+    float[] coordinates = {0.05f, -0.25f, 0f,  0.15f, -0.25f, 0f,
+                           0.15f, -0.15f, 0f,  0.05f, -0.2f, 0f};
+    int width = 400;
+    int height = 300;
+    double[] first = null;
+    double firstScale = 0;
+    double[][] displays = {
+      {1, 0, 0, 0,  0, 1, 0, 0,  0, 0, 1, 0,  0, 0, 0, 1},
+      {2, 0, 0, 0,  0, 2, 0, 0,  0, 0, 2, 0,  0, 0, 0, 1},
+      {0.5, 0, 0, 0.3,  0, 0.5, 0, -0.1,  0, 0, 0.5, 0,  0, 0, 0, 1},
+      {3, 0, 0, -0.2,  0, 3, 0, 0.4,  0, 0, 3, 0,  0, 0, 0, 1}
+    };
+    for (double[] display : displays) {
+      double scale = getScale(display);
+      if (firstScale <= 0) firstScale = scale;
+      double[] screen = new double[3];
+      double[] off = new double[coordinates.length];
+      double[] bounds = new double[4];
+      if (!project(display, camera, anchor[0], anchor[1], anchor[2],
+                   width, height, screen) ||
+          !makeOffsets(display, camera, coordinates, screen,
+                       firstScale / scale, width, height, off, bounds)) {
+        failures++;
+        System.out.println("offsets: label off screen at scale " + scale);
+        continue;
+      }
+      if (first == null) {
+        first = off;
+        continue;
+      }
+      for (int k = 0; k < off.length; k++) {
+        if (Math.abs(off[k] - first[k]) > 1.0e-6) {
+          failures++;
+          System.out.println("offsets: scale " + scale + " vertex " + (k / 3) +
+                             " moved " + (off[k] - first[k]) + " pixels");
+          break;
+        }
+      }
+    }
+
+    System.out.println(failures == 0 ? "placement checks passed" :
+                       failures + " failures");
+    if (failures > 0) System.exit(1);
+  }
+}
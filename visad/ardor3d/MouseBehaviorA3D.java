@@ -110,8 +110,24 @@ public class MouseBehaviorA3D implements MouseBehavior {
     return helper;
   }
   
+  /** findRay's working objects, one set per thread so a drag allocates none */
+  private final ThreadLocal<RayScratch> rayScratch = new ThreadLocal<RayScratch>() {
+    protected RayScratch initialValue() {
+      return new RayScratch();
+    }
+  };
+
+  private static final class RayScratch {
+    final Vector2 pos = new Vector2();
+    final Ray3 pickRay = new Ray3();
+    final Vector3 vctrA = new Vector3();
+    final Vector3 vctrB = new Vector3();
+  }
+
   /**
    * Return the VisAD ray corresponding to the component coordinates.
+   * The returned VisADRay is new, since callers such as MouseHelper may
+   * keep it; the working vectors are reused.
    * @param  screen_x  x coordinate of the component
    * @param  screen_y  y coordinate of the component
    * @return  corresponding VisADRay
@@ -119,11 +135,21 @@ public class MouseBehaviorA3D implements MouseBehavior {
    * @see visad.LocalDisplay#getComponent()
    */
   public VisADRay findRay(int screen_x, int screen_y) {
+    return findRay(screen_x, screen_y, new VisADRay());
+  }
+
+  /**
+   * Set ray to the VisAD ray corresponding to the component coordinates,
+   * allocating nothing, for callers that find a ray per drag event.
+   * @return  ray
+   */
+  VisADRay findRay(int screen_x, int screen_y, VisADRay ray) {
      
     Camera camera = display_renderer.getCanvasRenderer().getCamera();
+    RayScratch scratch = rayScratch.get();
     
-    final Vector2 pos = new Vector2(screen_x, screen_y);
-    final Ray3 pickRay = new Ray3();
+    final Vector2 pos = scratch.pos.set(screen_x, screen_y);
+    final Ray3 pickRay = scratch.pickRay;
     camera.getPickRay(pos, true, pickRay);
     
     ReadOnlyVector3 origin = pickRay.getOrigin();
@@ -131,9 +157,9 @@ public class MouseBehaviorA3D implements MouseBehavior {
     
     // make a unit vector in world coordinates (model space <-> VisAD display coordinates)
     // in the direction of the Ray under the user's cursor on the screen.
-    Vector3 vctrA = new Vector3(origin.getX(), origin.getY(), origin.getZ());
+    Vector3 vctrA = scratch.vctrA.set(origin.getX(), origin.getY(), origin.getZ());
     
-    Vector3 vctrB = new Vector3();
+    Vector3 vctrB = scratch.vctrB;
     vctrB.setX(origin.getX() + direction.getX());
     vctrB.setY(origin.getY() + direction.getY());
     vctrB.setZ(origin.getZ() + direction.getZ());
@@ -157,8 +183,6 @@ public class MouseBehaviorA3D implements MouseBehavior {
     dy /= mag;
     dz /= mag;
     
-    VisADRay ray = new VisADRay();
-    
     ray.position[0] = vctrA.getXf();
     ray.position[1] = vctrA.getYf();
     ray.position[2] = vctrA.getZf();
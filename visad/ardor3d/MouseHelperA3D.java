@@ -8,15 +8,10 @@ package visad.ardor3d;
 import com.ardor3d.math.Vector2;
 import com.ardor3d.math.Vector3;
 import com.ardor3d.renderer.Camera;
+import java.util.Arrays;
 import visad.DisplayRenderer;
-import visad.FlatField;
-import visad.FunctionType;
-import visad.Gridded1DSet;
 import visad.MouseBehavior;
 import visad.MouseHelper;
-import visad.Real;
-import visad.RealType;
-import visad.VisADRay;
 
 /**
  *
@@ -24,63 +19,69 @@ import visad.VisADRay;
  */
 public class MouseHelperA3D extends MouseHelper {
    
-   private FlatField zWorldToNormDepth = null;
+   /* camera model-view-projection and viewport for which xmul and ymul were found */
+   private final double[] cachedMatrix = new double[16];
+   private final double[] matrix = new double[16];
+   private int cachedWidth = -1;
+   private int cachedHeight = -1;
+   private float cachedXmul;
+   private float cachedYmul;
+   
+   private final Vector2 pos = new Vector2();
+   private final Vector3 near = new Vector3();
+   private final Vector3 far = new Vector3();
+   private final Vector3 wc = new Vector3();
+   private final Vector3 wcx = new Vector3();
+   private final Vector3 wcy = new Vector3();
    
    public MouseHelperA3D(DisplayRenderer r, MouseBehavior b) {
       super(r, b);
    }
    
-   public void setTranslationFactor(int screen_x, int screen_y) {
+   /**
+    * Set xmul and ymul, the world distance moved per pixel in the plane
+    * z = 0 under the center of the screen.  These depend only on the
+    * camera and the viewport, so they are found again only when the
+    * camera's projection or the canvas size changes.
+    */
+   public synchronized void setTranslationFactor(int screen_x, int screen_y) {
      Camera camera = ((DisplayRendererA3D)getDisplayRenderer()).getCanvasRenderer().getCamera();
-     Real worldZ0;
+     int width = camera.getWidth();
+     int height = camera.getHeight();
+     camera.getModelViewProjectionMatrix().toArray(matrix);
      
-     if (zWorldToNormDepth == null) {
-        int nPts = 101;
-        float del = 0.01f;
-        float nDpth = 0;
-        float[] normDepth = new float[nPts];
-        float[] zWorld = new float[nPts];
-        final Vector2 pos = Vector2.fetchTempInstance().set(camera.getWidth()/2, camera.getHeight()/2);
-        for (int k=0; k<nPts; k++) {
-           Vector3 wc = camera.getWorldCoordinates(pos, nDpth);
-           normDepth[k] = nDpth;
-           zWorld[k] = wc.getZf();
-           nDpth += del;
-        }
-        Vector2.releaseTempInstance(pos);
-        
-        try {
-          Gridded1DSet domSet = new Gridded1DSet(RealType.Generic, new float[][] {zWorld}, nPts);
-          zWorldToNormDepth = new FlatField(new FunctionType(RealType.Generic, RealType.Generic), domSet);
-          zWorldToNormDepth.setSamples(new float[][] {normDepth});
-        }
-        catch (Exception e) {
-           e.printStackTrace();
-        }
+     if (width != cachedWidth || height != cachedHeight ||
+         !Arrays.equals(matrix, cachedMatrix)) {
+        computeTranslationFactor(camera, screen_x, screen_y);
+        System.arraycopy(matrix, 0, cachedMatrix, 0, 16);
+        cachedWidth = width;
+        cachedHeight = height;
      }
-     
-     double normDepthAtWorldOrigin = 0;
-     
-     try {
-        normDepthAtWorldOrigin = ((Real)zWorldToNormDepth.evaluate(new Real(RealType.Generic, 0.0))).getValue();
-     } catch (Exception e) {
-        e.printStackTrace();
+     xmul = cachedXmul;
+     ymul = cachedYmul;
+   }
+   
+   private void computeTranslationFactor(Camera camera, int screen_x, int screen_y) {
+     // where the center ray crosses z = 0, and its normalized depth
+     pos.set(camera.getWidth()/2, camera.getHeight()/2);
+     camera.getWorldCoordinates(pos, 0, near);
+     camera.getWorldCoordinates(pos, 1, far);
+     double dz = far.getZ() - near.getZ();
+     double s = (dz != 0) ? -near.getZ() / dz : 0;
+     wc.set(near.getX() + s * (far.getX() - near.getX()),
+            near.getY() + s * (far.getY() - near.getY()),
+            near.getZ() + s * dz);
+     double normDepthAtWorldOrigin = camera.getScreenCoordinates(wc, wc).getZ();
+     if (normDepthAtWorldOrigin != normDepthAtWorldOrigin) {
+        normDepthAtWorldOrigin = 0;
      }
-      
-     final Vector2 pos = Vector2.fetchTempInstance().set(screen_x, screen_y);
-     final Vector2 posx = Vector2.fetchTempInstance().set(screen_x+1, screen_y);
-     final Vector2 posy = Vector2.fetchTempInstance().set(screen_x, screen_y+1);
-     
-     final Vector3 wc = camera.getWorldCoordinates(pos, normDepthAtWorldOrigin);
-     final Vector3 wcx = camera.getWorldCoordinates(posx, normDepthAtWorldOrigin);
-     final Vector3 wcy = camera.getWorldCoordinates(posy, normDepthAtWorldOrigin);
      
-     Vector2.releaseTempInstance(pos);
-     Vector2.releaseTempInstance(posx);
-     Vector2.releaseTempInstance(posy);
+     camera.getWorldCoordinates(pos.set(screen_x, screen_y), normDepthAtWorldOrigin, wc);
+     camera.getWorldCoordinates(pos.set(screen_x+1, screen_y), normDepthAtWorldOrigin, wcx);
+     camera.getWorldCoordinates(pos.set(screen_x, screen_y+1), normDepthAtWorldOrigin, wcy);
      
-     xmul = wcx.getXf() - wc.getXf();
-     ymul = -(wcy.getYf() - wc.getYf());
+     cachedXmul = wcx.getXf() - wc.getXf();
+     cachedYmul = -(wcy.getYf() - wc.getYf());
    }
    
 }
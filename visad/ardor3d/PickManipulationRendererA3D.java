@@ -68,9 +68,15 @@ public class PickManipulationRendererA3D extends DirectManipulationRendererA3D {
   private transient DataDisplayLink link = null;
   private transient DataReference ref = null;
 
-  private float[][] spatialValues = null;
+  private volatile float[][] spatialValues = null;
   /** index into spatialValues found by checkClose */
-  private int closeIndex = -1;
+  private volatile int closeIndex = -1;
+
+  /** spatialValues indexed for checkClose, built in setSpatialValues */
+  private volatile PointRayIndexA3D spatialIndex = null;
+
+  /** fewest points for which setSpatialValues builds an index */
+  private static final int MIN_INDEXED_POINTS = 64;
 
   private int directManifoldDimension = -1;
 
@@ -165,7 +171,14 @@ public class PickManipulationRendererA3D extends DirectManipulationRendererA3D {
    */
   public synchronized void setSpatialValues(float[][] spatial_values) {
     // these are X, Y, Z values
+    PointRayIndexA3D index = null;
+    if (spatial_values != null && spatial_values[0].length >= MIN_INDEXED_POINTS) {
+      index = new PointRayIndexA3D(spatial_values[0], spatial_values[1],
+                                   spatial_values[2]);
+    }
+    spatialIndex = index;
     spatialValues = spatial_values;
+    updatePickBounds(spatial_values);
   }
 
   /** 
@@ -174,13 +187,15 @@ public class PickManipulationRendererA3D extends DirectManipulationRendererA3D {
    * @param direction x,y,z values of the ray?
    * @return distance from the spatial values.
    */
-  public synchronized float checkClose(double[] origin, double[] direction) {
+  public float checkClose(double[] origin, double[] direction) {
     int mouseModifiers = getLastMouseModifiers();
     if ((mouseModifiers & mouseModifiersMask) != mouseModifiersValue) {
       return Float.MAX_VALUE;
     }
 
     float distance = Float.MAX_VALUE;
+    float[][] spatialValues = this.spatialValues;
+    PointRayIndexA3D spatialIndex = this.spatialIndex;
     if (spatialValues == null) return distance;
     float o_x = (float) origin[0];
     float o_y = (float) origin[1];
@@ -192,28 +207,25 @@ public class PickManipulationRendererA3D extends DirectManipulationRendererA3D {
 System.out.println("origin = " + o_x + " " + o_y + " " + o_z);
 System.out.println("direction = " + d_x + " " + d_y + " " + d_z);
 */
-    for (int i=0; i<spatialValues[0].length; i++) {
-      float x = spatialValues[0][i] - o_x;
-      float y = spatialValues[1][i] - o_y;
-      float z = spatialValues[2][i] - o_z;
-      float dot = x * d_x + y * d_y + z * d_z;
-      x = x - dot * d_x;
-      y = y - dot * d_y;
-      z = z - dot * d_z;
-      float d = (float) Math.sqrt(x * x + y * y + z * z);
-      if (d < distance) {
-        distance = d;
-        closeIndex = i;
-      }
-/*
-System.out.println("spatialValues["+i+"] = " + spatialValues[0][i] + " " +
-spatialValues[1][i] + " " + spatialValues[2][i] + " d = " + d);
-*/
+    // the index assumes a unit direction, as the scan's distances do
+    float d_len = d_x * d_x + d_y * d_y + d_z * d_z;
+    float[] distance_a = new float[1];
+    int close;
+    if (spatialIndex != null && spatialIndex.size() > 0 &&
+        Math.abs(d_len - 1.0f) < 1.0e-6f) {
+      close = spatialIndex.nearest(o_x, o_y, o_z, d_x, d_y, d_z, distance_a);
+    }
+    else {
+      close = PointRayIndexA3D.scan(spatialValues[0], spatialValues[1],
+          spatialValues[2], o_x, o_y, o_z, d_x, d_y, d_z, distance_a);
     }
 /*
-System.out.println("checkClose: distance = " + distance);
+System.out.println("checkClose: distance = " + distance_a[0]);
 */
-    return distance;
+    if (close >= 0) {
+      closeIndex = close;
+    }
+    return distance_a[0];
   }
 
   /**
@@ -26,13 +26,22 @@ MA 02111-1307, USA
 
 package visad.ardor3d;
 
+import com.ardor3d.math.ColorRGBA;
+import com.ardor3d.renderer.IndexMode;
+import com.ardor3d.scenegraph.Mesh;
+import com.ardor3d.scenegraph.MeshData;
 import com.ardor3d.scenegraph.Node;
+import com.ardor3d.scenegraph.hint.LightCombineMode;
+import com.ardor3d.util.GameTaskQueue;
+import com.ardor3d.util.geom.BufferUtils;
 import java.awt.event.InputEvent;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
+import java.nio.FloatBuffer;
 import java.rmi.RemoteException;
 import java.util.Enumeration;
 import java.util.Vector;
+import java.util.concurrent.Callable;
 
 import javax.swing.BoxLayout;
 import javax.swing.JFrame;
@@ -79,6 +88,25 @@ public class PointManipulationRendererA3D extends DirectManipulationRendererA3D
   private Node branch = null;
   private Node group = null;
 
+  /** follow drags, not just the press; see setDragEnabled */
+  private boolean dragEnabled = false;
+  /** least milliseconds between data updates during a drag; 0 for release only */
+  private long commitInterval = 0;
+  private long lastCommit = 0;
+  /** values dragged to but not yet set in the DataReference */
+  private double[] pendingValues = null;
+
+  /** marker at the dragged point, drawn before the data are set */
+  private transient Node markerNode = null;
+  private transient Mesh markerMesh = null;
+  private transient FloatBuffer markerBuffer = null;
+  private final float[] markerPoint = new float[3];
+  private boolean markerShown = false;
+  private boolean marker_queued = false;
+
+  /** half the size of the marker cross, in display coordinates */
+  private static final float MARKER_SIZE = 0.02f;
+
   /** this DirectManipulationRenderer is quite different - it does not
       render its data, but only place values into its DataReference
       on right mouse button press;
@@ -297,11 +325,54 @@ public class PointManipulationRendererA3D extends DirectManipulationRendererA3D
   public void stop_direct() {
   }
 
+  /**
+   * Let the point be dragged after the press.  During a drag the point
+   * is marked in the display at once, while the DataReference is set at
+   * most once per commit interval and always on release, so costly
+   * computations linked to it do not run for every mouse move.
+   */
+  public synchronized void setDragEnabled(boolean dragEnabled) {
+    this.dragEnabled = dragEnabled;
+  }
+
+  public synchronized boolean getDragEnabled() {
+    return dragEnabled;
+  }
+
+  /**
+   * Set the least time between DataReference updates during a drag.
+   * @param millis  0 to set the data only on release
+   */
+  public synchronized void setCommitInterval(long millis) {
+    commitInterval = Math.max(0, millis);
+  }
+
+  public synchronized long getCommitInterval() {
+    return commitInterval;
+  }
+
+  /** mouse button released: set the last dragged values */
+  public synchronized void release_direct() {
+    hideMarker();
+    if (pendingValues == null) return;
+    try {
+      commitValues(pendingValues);
+    }
+    catch (VisADException e) {
+      System.out.println("release_direct " + e);
+      e.printStackTrace();
+    }
+    catch (RemoteException e) {
+      System.out.println("release_direct " + e);
+      e.printStackTrace();
+    }
+  }
+
   public synchronized void drag_direct(VisADRay ray, boolean first,
                                        int mouseModifiers) {
     if (ref == null) return;
 
-    if (!first) return;
+    if (!first && !dragEnabled) return;
 
     double[] origin = ray.position;
     double[] direction = ray.vector;
@@ -367,8 +438,23 @@ public class PointManipulationRendererA3D extends DirectManipulationRendererA3D
       d = ymap.inverseScaleValues(f);
       dd[1] = d[0];
 
-      RealTuple rt = new RealTuple(xy, dd);
-      ref.setData(rt);
+      if (dragEnabled) {
+        showMarker((float) (origin[0] + r * direction[0]),
+                   (float) (origin[1] + r * direction[1]),
+                   (float) (origin[2] + r * direction[2]));
+      }
+      if (first) {
+        pendingValues = null;
+        commitValues(dd);
+      }
+      else {
+        // the marker follows now; the data at the commit rate or on release
+        pendingValues = dd;
+        if (commitInterval > 0 &&
+            System.currentTimeMillis() - lastCommit >= commitInterval) {
+          commitValues(dd);
+        }
+      }
 
     } // end try
     catch (VisADException e) {
@@ -383,9 +469,90 @@ public class PointManipulationRendererA3D extends DirectManipulationRendererA3D
     }
   }
 
+  private void commitValues(double[] dd)
+          throws VisADException, RemoteException {
+    pendingValues = null;
+    lastCommit = System.currentTimeMillis();
+    RealTuple rt = new RealTuple(xy, dd);
+    ref.setData(rt);
+  }
+
+  private void showMarker(float px, float py, float pz) {
+    markerPoint[0] = px;
+    markerPoint[1] = py;
+    markerPoint[2] = pz;
+    markerShown = true;
+    queueMarkerUpdate();
+  }
+
+  private void hideMarker() {
+    if (!markerShown) return;
+    markerShown = false;
+    queueMarkerUpdate();
+  }
+
+  /** move the marker from the UPDATE queue; moves made before the
+      queued task runs are folded into it */
+  private void queueMarkerUpdate() {
+    if (marker_queued) return;
+    marker_queued = true;
+
+    final DisplayRendererA3D dspRenderer = (DisplayRendererA3D) getDisplayRenderer();
+    Callable updateCallable = new Callable() {
+      public Object call() {
+        synchronized (PointManipulationRendererA3D.this) {
+          marker_queued = false;
+          updateMarker(dspRenderer);
+        }
+        return null;
+      }
+    };
+    dspRenderer.getTaskQueueManager().getQueue(GameTaskQueue.UPDATE).enqueue(updateCallable);
+    dspRenderer.markNeedDraw();
+  }
+
+  /** runs on the UPDATE queue */
+  private void updateMarker(DisplayRendererA3D dspRenderer) {
+    if (!markerShown || branch == null) {
+      if (markerNode != null) markerNode.removeFromParent();
+      return;
+    }
+    if (markerMesh == null) {
+      markerMesh = new Mesh();
+      MeshData meshData = new MeshData();
+      meshData.setIndexMode(IndexMode.Lines);
+      markerMesh.setMeshData(meshData);
+      markerMesh.getSceneHints().setLightCombineMode(LightCombineMode.Off);
+      float[] color = dspRenderer.getRendererControl().getCursorColor();
+      markerMesh.setDefaultColor(new ColorRGBA(color[0], color[1], color[2], 1f));
+      markerBuffer = BufferUtils.createFloatBuffer(12);
+      markerNode = new Node();
+      markerNode.attachChild(markerMesh);
+    }
+    float px = markerPoint[0], py = markerPoint[1], pz = markerPoint[2];
+    markerBuffer.clear();
+    markerBuffer.put(px - MARKER_SIZE).put(py).put(pz);
+    markerBuffer.put(px + MARKER_SIZE).put(py).put(pz);
+    markerBuffer.put(px).put(py - MARKER_SIZE).put(pz);
+    markerBuffer.put(px).put(py + MARKER_SIZE).put(pz);
+    markerBuffer.flip();
+    markerMesh.getMeshData().setVertexBuffer(markerBuffer);
+    markerMesh.updateModelBound();
+
+    // doTransform may have made a new branch since the last drag
+    if (markerNode.getParent() != branch) {
+      markerNode.removeFromParent();
+      branch.attachChild(markerNode);
+    }
+  }
+
   public Object clone() {
-    return new PointManipulationRendererA3D(x, y, mouseModifiersMask,
-                                            mouseModifiersValue);
+    PointManipulationRendererA3D clone =
+      new PointManipulationRendererA3D(x, y, mouseModifiersMask,
+                                       mouseModifiersValue);
+    clone.setDragEnabled(getDragEnabled());
+    clone.setCommitInterval(getCommitInterval());
+    return clone;
   }
 
   private static final int N = 64;
@@ -0,0 +1,393 @@
+//
+// PointRayIndexA3D.java
+//
+
+/*
+VisAD system for interactive analysis and visualization of numerical
+data.  Copyright (C) 1996 - 2017 Bill Hibbard, Curtis Rueden, Tom
+Rink, Dave Glowacki, Steve Emmerson, Tom Whittaker, Don Murray, and
+Tommy Jasmin.
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Library General Public
+License as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Library General Public License for more details.
+
+You should have received a copy of the GNU Library General Public
+License along with this library; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330, Boston,
+MA 02111-1307, USA
+*/
+
+package visad.ardor3d;
+
+/**
+   PointRayIndexA3D finds the point closest to a ray among a fixed set
+   of points, visiting O(log n) of them for a typical pick.<P>
+
+   Points are split at the median of their longest extent into a
+   binary tree of bounding spheres with at most LEAF_SIZE points per
+   leaf.  A query visits nearer spheres first and skips any sphere
+   that cannot hold a closer point.  Distances to points are computed
+   in float exactly as a linear scan does, ties going to the lower
+   index, so the result is the one scan gives; main checks this on
+   random points and rays.  The index is immutable after construction
+   and may be queried from any thread.<P>
+*/
+final class PointRayIndexA3D {
+
+  private static final int LEAF_SIZE = 8;
+
+  /** relative float error allowed for when skipping a sphere */
+  private static final double SLACK = 1.0e-5;
+
+  // points in tree order, and their indices in the original arrays
+  private final float[] xs, ys, zs;
+  private final int[] ids;
+
+  // nodes: sphere, point range, first child (second is first + 1), -1 for a leaf
+  private final double[] cx, cy, cz, radius;
+  private final int[] lo, hi, child;
+  private int nodeCount = 0;
+  private int depth = 0;
+
+  /**
+   * Index the points (x[i], y[i], z[i]); points with a NaN coordinate
+   * are left out, as a scan never picks them.
+   */
+  PointRayIndexA3D(float[] x, float[] y, float[] z) {
+    int n = 0;
+    for (int i=0; i<x.length; i++) {
+      if (x[i] == x[i] && y[i] == y[i] && z[i] == z[i]) n++;
+    }
+    ids = new int[n];
+    n = 0;
+    for (int i=0; i<x.length; i++) {
+      if (x[i] == x[i] && y[i] == y[i] && z[i] == z[i]) ids[n++] = i;
+    }
+
+    int maxNodes = 4 * (n / LEAF_SIZE) + 4;
+    cx = new double[maxNodes];
+    cy = new double[maxNodes];
+    cz = new double[maxNodes];
+    radius = new double[maxNodes];
+    lo = new int[maxNodes];
+    hi = new int[maxNodes];
+    child = new int[maxNodes];
+    if (n > 0) {
+      nodeCount = 1;
+      build(0, 0, n, x, y, z, 1);
+    }
+
+    xs = new float[n];
+    ys = new float[n];
+    zs = new float[n];
+    for (int p=0; p<n; p++) {
+      xs[p] = x[ids[p]];
+      ys[p] = y[ids[p]];
+      zs[p] = z[ids[p]];
+    }
+  }
+
+  /** number of points indexed */
+  int size() {
+    return ids.length;
+  }
+
+  private void build(int node, int l, int h, float[] x, float[] y, float[] z,
+                     int level) {
+    if (level > depth) depth = level;
+    double x0 = Double.MAX_VALUE, y0 = Double.MAX_VALUE, z0 = Double.MAX_VALUE;
+    double x1 = -Double.MAX_VALUE, y1 = -Double.MAX_VALUE, z1 = -Double.MAX_VALUE;
+    for (int p=l; p<h; p++) {
+      int i = ids[p];
+      x0 = Math.min(x0, x[i]);  x1 = Math.max(x1, x[i]);
+      y0 = Math.min(y0, y[i]);  y1 = Math.max(y1, y[i]);
+      z0 = Math.min(z0, z[i]);  z1 = Math.max(z1, z[i]);
+    }
+    double mx = 0.5 * (x0 + x1), my = 0.5 * (y0 + y1), mz = 0.5 * (z0 + z1);
+    double r2 = 0.0;
+    for (int p=l; p<h; p++) {
+      int i = ids[p];
+      double ex = x[i] - mx, ey = y[i] - my, ez = z[i] - mz;
+      r2 = Math.max(r2, ex * ex + ey * ey + ez * ez);
+    }
+    cx[node] = mx;
+    cy[node] = my;
+    cz[node] = mz;
+    radius[node] = Math.sqrt(r2);
+    lo[node] = l;
+    hi[node] = h;
+    if (h - l <= LEAF_SIZE) {
+      child[node] = -1;
+      return;
+    }
+
+    float[] key = (x1 - x0 >= y1 - y0 && x1 - x0 >= z1 - z0) ? x :
+                  ((y1 - y0 >= z1 - z0) ? y : z);
+    int m = (l + h) >>> 1;
+    select(key, l, h - 1, m);
+    int first = nodeCount;
+    nodeCount += 2;
+    child[node] = first;
+    build(first, l, m, x, y, z, level + 1);
+    build(first + 1, m, h, x, y, z, level + 1);
+  }
+
+  /** reorder ids[l..r] so the key of ids[k] is in its sorted place */
+  private void select(float[] key, int l, int r, int k) {
+    while (r > l) {
+      int i = l, j = r;
+      float pivot = key[ids[(l + r) >>> 1]];
+      while (i <= j) {
+        while (key[ids[i]] < pivot) i++;
+        while (key[ids[j]] > pivot) j--;
+        if (i <= j) {
+          int t = ids[i];
+          ids[i] = ids[j];
+          ids[j] = t;
+          i++;
+          j--;
+        }
+      }
+      if (k <= j) {
+        r = j;
+      }
+      else if (k >= i) {
+        l = i;
+      }
+      else {
+        return;
+      }
+    }
+  }
+
+  /**
+   * Return the index of the point closest to the line through origin
+   * along direction, which must have unit length, or -1 if there are
+   * no points; distance[0] is set to its distance.
+   */
+  int nearest(float o_x, float o_y, float o_z, float d_x, float d_y, float d_z,
+              float[] distance) {
+    float best = Float.MAX_VALUE;
+    int bestIndex = -1;
+    if (nodeCount == 0) {
+      distance[0] = best;
+      return bestIndex;
+    }
+
+    int[] stack = new int[2 * depth + 2];
+    int top = 0;
+    stack[top++] = 0;
+    while (top > 0) {
+      int node = stack[--top];
+      if (bound(node, o_x, o_y, o_z, d_x, d_y, d_z) > best) continue;
+
+      int c = child[node];
+      if (c < 0) {
+        for (int p=lo[node]; p<hi[node]; p++) {
+          float x = xs[p] - o_x;
+          float y = ys[p] - o_y;
+          float z = zs[p] - o_z;
+          float dot = x * d_x + y * d_y + z * d_z;
+          x = x - dot * d_x;
+          y = y - dot * d_y;
+          z = z - dot * d_z;
+          float d = (float) Math.sqrt(x * x + y * y + z * z);
+          if (d < best || (d == best && ids[p] < bestIndex)) {
+            best = d;
+            bestIndex = ids[p];
+          }
+        }
+        continue;
+      }
+      // push the farther child first, so the nearer one is visited first
+      double b0 = bound(c, o_x, o_y, o_z, d_x, d_y, d_z);
+      double b1 = bound(c + 1, o_x, o_y, o_z, d_x, d_y, d_z);
+      if (b0 <= b1) {
+        stack[top++] = c + 1;
+        stack[top++] = c;
+      }
+      else {
+        stack[top++] = c;
+        stack[top++] = c + 1;
+      }
+    }
+    distance[0] = best;
+    return bestIndex;
+  }
+
+  /** a lower bound, less float error, on the distance from the line to points of node */
+  private double bound(int node, float o_x, float o_y, float o_z,
+                       float d_x, float d_y, float d_z) {
+    double x = cx[node] - o_x;
+    double y = cy[node] - o_y;
+    double z = cz[node] - o_z;
+    double reach = Math.sqrt(x * x + y * y + z * z) + radius[node];
+    double dot = x * d_x + y * d_y + z * d_z;
+    x = x - dot * d_x;
+    y = y - dot * d_y;
+    z = z - dot * d_z;
+    return Math.sqrt(x * x + y * y + z * z) - radius[node] - SLACK * reach;
+  }
+
+  /**
+   * Linear scan for the point closest to the line through origin along
+   * direction, the first found on ties; distance[0] is set to its
+   * distance, Float.MAX_VALUE if there are no points.
+   */
+  static int scan(float[] xs, float[] ys, float[] zs,
+                  float o_x, float o_y, float o_z,
+                  float d_x, float d_y, float d_z, float[] distance) {
+    float best = Float.MAX_VALUE;
+    int bestIndex = -1;
+    for (int i=0; i<xs.length; i++) {
+      float x = xs[i] - o_x;
+      float y = ys[i] - o_y;
+      float z = zs[i] - o_z;
+      float dot = x * d_x + y * d_y + z * d_z;
+      x = x - dot * d_x;
+      y = y - dot * d_y;
+      z = z - dot * d_z;
+      float d = (float) Math.sqrt(x * x + y * y + z * z);
+      if (d < best) {
+        best = d;
+        bestIndex = i;
+      }
+    }
+    distance[0] = best;
+    return bestIndex;
+  }
+
+  /**
+   * Check that nearest gives the same point and distance as scan, then
+   * time both:  java visad.ardor3d.PointRayIndexA3D [points [rays]]
+   * with 100000 points and 10000 rays by default.  The point sets mix
+   * uniform random points, NaNs, repeated points and a grid, so that
+   * many rays tie; rays are random, and some pass exactly through a
+   * point.  Exits with status 1 on any difference.
+   */
+  public static void main(String[] args) {
+    int n = (args.length > 0) ? Integer.parseInt(args[0]) : 100000;
+    int rays = (args.length > 1) ? Integer.parseInt(args[1]) : 10000;
+    java.util.Random random = new java.util.Random(1);
+
+    int failures = 0;
+    int[] sizes = {0, 1, 2, LEAF_SIZE, LEAF_SIZE + 1, 100, 1000, n};
+    for (int s=0; s<sizes.length; s++) {
+      for (int kind=0; kind<3; kind++) {
+        float[][] p = makePoints(random, sizes[s], kind);
+        PointRayIndexA3D index = new PointRayIndexA3D(p[0], p[1], p[2]);
+        int count = Math.min(rays, 1000);
+        for (int r=0; r<count; r++) {
+          float[] ray = makeRay(random, p);
+          float[] d_index = new float[1];
+          float[] d_scan = new float[1];
+          int i_index = index.nearest(ray[0], ray[1], ray[2],
+                                      ray[3], ray[4], ray[5], d_index);
+          int i_scan = scan(p[0], p[1], p[2], ray[0], ray[1], ray[2],
+                            ray[3], ray[4], ray[5], d_scan);
+          if (i_index != i_scan || d_index[0] != d_scan[0]) {
+            failures++;
+            System.out.println("points " + sizes[s] + " kind " + kind +
+                " ray " + r + ": index " + i_index + " at " + d_index[0] +
+                ", scan " + i_scan + " at " + d_scan[0]);
+          }
+        }
+      }
+    }
+    System.out.println(failures == 0 ? "index matches scan" :
+                       failures + " differences");
+
+    float[][] p = makePoints(random, n, 0);
+    long t = System.nanoTime();
+    PointRayIndexA3D index = new PointRayIndexA3D(p[0], p[1], p[2]);
+    long build = System.nanoTime() - t;
+    float[][] r = new float[rays][];
+    for (int i=0; i<rays; i++) r[i] = makeRay(random, p);
+    float[] distance = new float[1];
+    t = System.nanoTime();
+    for (int i=0; i<rays; i++) {
+      index.nearest(r[i][0], r[i][1], r[i][2], r[i][3], r[i][4], r[i][5],
+                    distance);
+    }
+    long indexed = System.nanoTime() - t;
+    t = System.nanoTime();
+    for (int i=0; i<rays; i++) {
+      scan(p[0], p[1], p[2], r[i][0], r[i][1], r[i][2], r[i][3], r[i][4],
+           r[i][5], distance);
+    }
+    long scanned = System.nanoTime() - t;
+    System.out.println(n + " points: build " + (build / 1000000) + " ms, " +
+        rays + " rays indexed " + (indexed / 1000000) + " ms, scanned " +
+        (scanned / 1000000) + " ms");
+
+    if (failures > 0) System.exit(1);
+  }
+
+  /**
+   * n points: kind 0 uniform with a few NaNs, kind 1 drawn from a few
+   * distinct points, kind 2 on an integer grid
+   */
+  private static float[][] makePoints(java.util.Random random, int n,
+                                      int kind) {
+    float[][] p = new float[3][n];
+    int side = Math.max(1, (int) Math.cbrt(n));
+    for (int i=0; i<n; i++) {
+      for (int k=0; k<3; k++) {
+        if (kind == 0) {
+          p[k][i] = 2.0f * random.nextFloat() - 1.0f;
+        }
+        else if (kind == 1) {
+          p[k][i] = random.nextInt(4) * 0.25f;
+        }
+        else {
+          int c = (k == 0) ? i % side : ((k == 1) ? (i / side) % side : i / (side * side));
+          p[k][i] = c;
+        }
+      }
+      if (kind == 0 && random.nextInt(100) == 0) {
+        p[random.nextInt(3)][i] = Float.NaN;
+      }
+    }
+    return p;
+  }
+
+  /**
+   * origin and unit direction of a random ray; one in four passes
+   * along z exactly through a point, and one in four is along an axis
+   */
+  private static float[] makeRay(java.util.Random random, float[][] p) {
+    float[] ray = new float[6];
+    int n = p[0].length;
+    for (int k=0; k<3; k++) ray[k] = 4.0f * random.nextFloat() - 2.0f;
+    if (n > 0 && random.nextInt(4) == 0) {
+      int i = random.nextInt(n);
+      if (p[0][i] == p[0][i] && p[1][i] == p[1][i] && p[2][i] == p[2][i]) {
+        ray[0] = p[0][i];
+        ray[1] = p[1][i];
+        ray[2] = p[2][i] - 5.0f;
+        ray[5] = 1.0f;
+        return ray;
+      }
+    }
+    if (random.nextInt(4) == 0) {
+      ray[3 + random.nextInt(3)] = 1.0f;
+    }
+    else {
+      float len;
+      do {
+        for (int k=3; k<6; k++) ray[k] = 2.0f * random.nextFloat() - 1.0f;
+        len = (float) Math.sqrt(ray[3] * ray[3] + ray[4] * ray[4] +
+                                ray[5] * ray[5]);
+      } while (len < 0.1f || len > 1.0f);
+      for (int k=3; k<6; k++) ray[k] /= len;
+    }
+    return ray;
+  }
+}
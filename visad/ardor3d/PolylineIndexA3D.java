@@ -0,0 +1,432 @@
+//
+// PolylineIndexA3D.java
+//
+
+/*
+VisAD system for interactive analysis and visualization of numerical
+data.  Copyright (C) 1996 - 2017 Bill Hibbard, Curtis Rueden, Tom
+Rink, Dave Glowacki, Steve Emmerson, Tom Whittaker, Don Murray, and
+Tommy Jasmin.
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Library General Public
+License as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Library General Public License for more details.
+
+You should have received a copy of the GNU Library General Public
+License along with this library; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330, Boston,
+MA 02111-1307, USA
+*/
+
+package visad.ardor3d;
+
+import java.util.Arrays;
+
+/**
+   PolylineIndexA3D finds the vertex, or the segment, of a set of
+   polylines closest to a ray, and is updated in place as vertices are
+   moved or appended.<P>
+
+   Vertices are kept in order, and each run of FANOUT consecutive
+   vertices, plus the first vertex of the next run, has a bounding
+   sphere; FANOUT spheres in turn have a parent sphere, and so on.
+   Since curves are drawn point by point, consecutive vertices are
+   close together and the spheres are small.  Moving a vertex refits
+   the spheres above it, and appending one refits the last sphere of
+   each level, so neither costs more than O(log n).  A query visits
+   nearer spheres first and skips those that cannot beat the best
+   distance found.<P>
+
+   Vertex distances are computed in float as the linear scan of
+   CurveManipulationRendererA3D.checkClose does, with ties going to the
+   lower index, so nearestVertex gives the scan's result.  The index is
+   not thread safe.<P>
+*/
+final class PolylineIndexA3D {
+
+  private static final int FANOUT = 16;
+
+  /** relative float error allowed for when skipping a sphere */
+  private static final double SLACK = 1.0e-5;
+
+  private float[] xs = new float[0], ys = new float[0], zs = new float[0];
+  /** curveStart[i] if vertex i begins a polyline, so (i-1, i) is no segment */
+  private boolean[] curveStart = new boolean[0];
+  private int count = 0;
+
+  /** per level, spheres as {x, y, z, radius} */
+  private double[][] spheres;
+  private int[] nodeCounts;
+
+  /** result of the last query */
+  private float distance;
+  private int nearest;
+  private float segmentT;
+
+  PolylineIndexA3D() {
+    rebuild();
+  }
+
+  /** number of vertices */
+  int size() {
+    return count;
+  }
+
+  /**
+   * Replace all vertices: values are {x, y, z}, and lengths the vertex
+   * counts of successive polylines, or null for one polyline.
+   */
+  void set(float[][] values, int[] lengths) {
+    int n = (values == null) ? 0 : values[0].length;
+    xs = Arrays.copyOf(values == null ? new float[0] : values[0], Math.max(n, 16));
+    ys = Arrays.copyOf(values == null ? new float[0] : values[1], Math.max(n, 16));
+    zs = Arrays.copyOf(values == null ? new float[0] : values[2], Math.max(n, 16));
+    curveStart = new boolean[Math.max(n, 16)];
+    if (n > 0) curveStart[0] = true;
+    if (lengths != null) {
+      int start = 0;
+      for (int len : lengths) {
+        if (start < n) curveStart[start] = true;
+        start += len;
+      }
+    }
+    count = n;
+    rebuild();
+  }
+
+  /** true if vertex i begins a polyline */
+  boolean isCurveStart(int i) {
+    return curveStart[i];
+  }
+
+  /** set xyz to vertex i */
+  void get(int i, float[] xyz) {
+    xyz[0] = xs[i];
+    xyz[1] = ys[i];
+    xyz[2] = zs[i];
+  }
+
+  /** the vertex i is now (x, y, z) */
+  void move(int i, float x, float y, float z) {
+    xs[i] = x;
+    ys[i] = y;
+    zs[i] = z;
+    // vertex i also bounds the run before it, for its segment
+    refit(i / FANOUT);
+    if (i % FANOUT == 0 && i > 0) refit(i / FANOUT - 1);
+  }
+
+  /** append vertex (x, y, z), beginning a new polyline if newCurve */
+  void append(float x, float y, float z, boolean newCurve) {
+    if (count == xs.length) {
+      int capacity = Math.max(16, 2 * count);
+      xs = Arrays.copyOf(xs, capacity);
+      ys = Arrays.copyOf(ys, capacity);
+      zs = Arrays.copyOf(zs, capacity);
+      curveStart = Arrays.copyOf(curveStart, capacity);
+    }
+    xs[count] = x;
+    ys[count] = y;
+    zs[count] = z;
+    curveStart[count] = newCurve || count == 0;
+    count++;
+
+    int leaves = (count + FANOUT - 1) / FANOUT;
+    if (leaves > nodeCounts[0]) {
+      if (levelsFor(leaves) != nodeCounts.length ||
+          4 * leaves > spheres[0].length) {
+        // out of room, or a new level: lay the levels out again
+        rebuild();
+        return;
+      }
+      growLevels(leaves);
+    }
+    int i = count - 1;
+    refit(i / FANOUT);
+    if (i % FANOUT == 0 && i > 0) refit(i / FANOUT - 1);
+  }
+
+  /**
+   * Return the index of the vertex closest to the line through origin
+   * along the unit vector direction, or -1 if there are none; its
+   * distance is then getDistance().
+   */
+  int nearestVertex(float o_x, float o_y, float o_z,
+                    float d_x, float d_y, float d_z) {
+    distance = Float.MAX_VALUE;
+    nearest = -1;
+    if (count > 0) {
+      int top = nodeCounts.length - 1;
+      for (int k=0; k<nodeCounts[top]; k++) {
+        search(top, k, false, o_x, o_y, o_z, d_x, d_y, d_z);
+      }
+    }
+    return nearest;
+  }
+
+  /**
+   * Return i for the segment (i, i+1) closest to the line through
+   * origin along the unit vector direction, or -1 if there are none;
+   * its distance is then getDistance(), and the closest point on it is
+   * at getSegmentT() from vertex i toward vertex i+1.
+   */
+  int nearestSegment(float o_x, float o_y, float o_z,
+                     float d_x, float d_y, float d_z) {
+    distance = Float.MAX_VALUE;
+    nearest = -1;
+    segmentT = 0f;
+    if (count > 1) {
+      int top = nodeCounts.length - 1;
+      for (int k=0; k<nodeCounts[top]; k++) {
+        search(top, k, true, o_x, o_y, o_z, d_x, d_y, d_z);
+      }
+    }
+    return nearest;
+  }
+
+  float getDistance() {
+    return distance;
+  }
+
+  float getSegmentT() {
+    return segmentT;
+  }
+
+  private void search(int level, int k, boolean segments, float o_x, float o_y,
+                      float o_z, float d_x, float d_y, float d_z) {
+    if (bound(level, k, o_x, o_y, o_z, d_x, d_y, d_z) > distance) return;
+
+    if (level == 0) {
+      int i0 = k * FANOUT;
+      int i1 = Math.min(i0 + FANOUT, count);
+      for (int i=i0; i<i1; i++) {
+        if (segments) {
+          if (i + 1 < count && !curveStart[i + 1]) {
+            testSegment(i, o_x, o_y, o_z, d_x, d_y, d_z);
+          }
+        }
+        else {
+          testVertex(i, o_x, o_y, o_z, d_x, d_y, d_z);
+        }
+      }
+      return;
+    }
+
+    // children nearest first
+    int c0 = k * FANOUT;
+    int c1 = Math.min(c0 + FANOUT, nodeCounts[level - 1]);
+    int m = c1 - c0;
+    int[] order = new int[m];
+    double[] b = new double[m];
+    for (int j=0; j<m; j++) {
+      order[j] = c0 + j;
+      b[j] = bound(level - 1, c0 + j, o_x, o_y, o_z, d_x, d_y, d_z);
+    }
+    for (int j=1; j<m; j++) {
+      int c = order[j];
+      double v = b[j];
+      int q = j - 1;
+      while (q >= 0 && b[q] > v) {
+        order[q + 1] = order[q];
+        b[q + 1] = b[q];
+        q--;
+      }
+      order[q + 1] = c;
+      b[q + 1] = v;
+    }
+    for (int j=0; j<m; j++) {
+      if (b[j] > distance) break;
+      search(level - 1, order[j], segments, o_x, o_y, o_z, d_x, d_y, d_z);
+    }
+  }
+
+  private void testVertex(int i, float o_x, float o_y, float o_z,
+                          float d_x, float d_y, float d_z) {
+    float x = xs[i] - o_x;
+    float y = ys[i] - o_y;
+    float z = zs[i] - o_z;
+    float dot = x * d_x + y * d_y + z * d_z;
+    x = x - dot * d_x;
+    y = y - dot * d_y;
+    z = z - dot * d_z;
+    float d = (float) Math.sqrt(x * x + y * y + z * z);
+    if (d < distance || (d == distance && i < nearest)) {
+      distance = d;
+      nearest = i;
+    }
+  }
+
+  private void testSegment(int i, float o_x, float o_y, float o_z,
+                           float d_x, float d_y, float d_z) {
+    double wx = xs[i] - o_x, wy = ys[i] - o_y, wz = zs[i] - o_z;
+    double ex = xs[i + 1] - xs[i], ey = ys[i + 1] - ys[i], ez = zs[i + 1] - zs[i];
+    double a = d_x * d_x + d_y * d_y + d_z * d_z;
+    double b = d_x * ex + d_y * ey + d_z * ez;
+    double c = ex * ex + ey * ey + ez * ez;
+    double dw = d_x * wx + d_y * wy + d_z * wz;
+    double ew = ex * wx + ey * wy + ez * wz;
+    // squared distance from the line to w + t e is quadratic in t
+    double denom = c - b * b / a;
+    double t = (denom > 1.0e-12 * c) ? (b * dw / a - ew) / denom : 0.0;
+    t = Math.max(0.0, Math.min(1.0, t));
+    double px = wx + t * ex, py = wy + t * ey, pz = wz + t * ez;
+    double dot = (d_x * px + d_y * py + d_z * pz) / a;
+    px -= dot * d_x;
+    py -= dot * d_y;
+    pz -= dot * d_z;
+    float d = (float) Math.sqrt(px * px + py * py + pz * pz);
+    if (d < distance || (d == distance && i < nearest)) {
+      distance = d;
+      nearest = i;
+      segmentT = (float) t;
+    }
+  }
+
+  /** a lower bound, less float error, on the distance from the line to node */
+  private double bound(int level, int k, float o_x, float o_y, float o_z,
+                       float d_x, float d_y, float d_z) {
+    double[] s = spheres[level];
+    double r = s[4 * k + 3];
+    if (r < 0) return Double.MAX_VALUE;
+    double x = s[4 * k] - o_x;
+    double y = s[4 * k + 1] - o_y;
+    double z = s[4 * k + 2] - o_z;
+    double reach = Math.sqrt(x * x + y * y + z * z) + r;
+    double dot = x * d_x + y * d_y + z * d_z;
+    x = x - dot * d_x;
+    y = y - dot * d_y;
+    z = z - dot * d_z;
+    return Math.sqrt(x * x + y * y + z * z) - r - SLACK * reach;
+  }
+
+  private static int levelsFor(int leaves) {
+    int levels = 1;
+    int n = leaves;
+    while (n > FANOUT) {
+      n = (n + FANOUT - 1) / FANOUT;
+      levels++;
+    }
+    return levels;
+  }
+
+  /** lay out all levels for count vertices, with room to append */
+  private void rebuild() {
+    int leaves = Math.max(1, (count + FANOUT - 1) / FANOUT);
+    int levels = levelsFor(leaves);
+    spheres = new double[levels][];
+    nodeCounts = new int[levels];
+    int n = leaves;
+    for (int l=0; l<levels; l++) {
+      nodeCounts[l] = n;
+      spheres[l] = new double[8 * n];
+      n = (n + FANOUT - 1) / FANOUT;
+    }
+    for (int k=0; k<leaves; k++) {
+      fitLeaf(k);
+    }
+    for (int l=1; l<levels; l++) {
+      for (int k=0; k<nodeCounts[l]; k++) {
+        fitParent(l, k);
+      }
+    }
+  }
+
+  /** add nodes for leaves leaves, when they fit the present levels */
+  private void growLevels(int leaves) {
+    int n = leaves;
+    for (int l=0; l<nodeCounts.length; l++) {
+      int old = nodeCounts[l];
+      nodeCounts[l] = n;
+      for (int k=old; k<n; k++) {
+        spheres[l][4 * k + 3] = -1;
+      }
+      n = (n + FANOUT - 1) / FANOUT;
+    }
+  }
+
+  /** refit leaf k and the nodes above it */
+  private void refit(int k) {
+    if (k < 0 || nodeCounts.length == 0 || k >= nodeCounts[0]) return;
+    fitLeaf(k);
+    for (int l=1; l<nodeCounts.length; l++) {
+      k /= FANOUT;
+      fitParent(l, k);
+    }
+  }
+
+  private void fitLeaf(int k) {
+    int i0 = k * FANOUT;
+    // one past the run, for the segment that leaves it
+    int i1 = Math.min(i0 + FANOUT + 1, count);
+    double[] s = spheres[0];
+    if (i0 >= i1) {
+      s[4 * k + 3] = -1;
+      return;
+    }
+    double x0 = Double.MAX_VALUE, y0 = Double.MAX_VALUE, z0 = Double.MAX_VALUE;
+    double x1 = -Double.MAX_VALUE, y1 = -Double.MAX_VALUE, z1 = -Double.MAX_VALUE;
+    int n = 0;
+    for (int i=i0; i<i1; i++) {
+      if (xs[i] != xs[i] || ys[i] != ys[i] || zs[i] != zs[i]) continue;
+      x0 = Math.min(x0, xs[i]);  x1 = Math.max(x1, xs[i]);
+      y0 = Math.min(y0, ys[i]);  y1 = Math.max(y1, ys[i]);
+      z0 = Math.min(z0, zs[i]);  z1 = Math.max(z1, zs[i]);
+      n++;
+    }
+    if (n == 0) {
+      s[4 * k + 3] = -1;
+      return;
+    }
+    double cx = 0.5 * (x0 + x1), cy = 0.5 * (y0 + y1), cz = 0.5 * (z0 + z1);
+    double r2 = 0.0;
+    for (int i=i0; i<i1; i++) {
+      if (xs[i] != xs[i] || ys[i] != ys[i] || zs[i] != zs[i]) continue;
+      double ex = xs[i] - cx, ey = ys[i] - cy, ez = zs[i] - cz;
+      r2 = Math.max(r2, ex * ex + ey * ey + ez * ez);
+    }
+    s[4 * k] = cx;
+    s[4 * k + 1] = cy;
+    s[4 * k + 2] = cz;
+    s[4 * k + 3] = Math.sqrt(r2);
+  }
+
+  private void fitParent(int level, int k) {
+    double[] c = spheres[level - 1];
+    int j0 = k * FANOUT;
+    int j1 = Math.min(j0 + FANOUT, nodeCounts[level - 1]);
+    double x0 = Double.MAX_VALUE, y0 = Double.MAX_VALUE, z0 = Double.MAX_VALUE;
+    double x1 = -Double.MAX_VALUE, y1 = -Double.MAX_VALUE, z1 = -Double.MAX_VALUE;
+    boolean any = false;
+    for (int j=j0; j<j1; j++) {
+      double r = c[4 * j + 3];
+      if (r < 0) continue;
+      x0 = Math.min(x0, c[4 * j] - r);  x1 = Math.max(x1, c[4 * j] + r);
+      y0 = Math.min(y0, c[4 * j + 1] - r);  y1 = Math.max(y1, c[4 * j + 1] + r);
+      z0 = Math.min(z0, c[4 * j + 2] - r);  z1 = Math.max(z1, c[4 * j + 2] + r);
+      any = true;
+    }
+    double[] s = spheres[level];
+    if (!any) {
+      s[4 * k + 3] = -1;
+      return;
+    }
+    double cx = 0.5 * (x0 + x1), cy = 0.5 * (y0 + y1), cz = 0.5 * (z0 + z1);
+    double radius = 0.0;
+    for (int j=j0; j<j1; j++) {
+      double r = c[4 * j + 3];
+      if (r < 0) continue;
+      double ex = c[4 * j] - cx, ey = c[4 * j + 1] - cy, ez = c[4 * j + 2] - cz;
+      radius = Math.max(radius, Math.sqrt(ex * ex + ey * ey + ez * ez) + r);
+    }
+    s[4 * k] = cx;
+    s[4 * k + 1] = cy;
+    s[4 * k + 2] = cz;
+    s[4 * k + 3] = radius;
+  }
+}
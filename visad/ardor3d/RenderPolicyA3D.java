@@ -0,0 +1,50 @@
+package visad.ardor3d;
+
+/**
+ * Frame-rate policy for one display's canvas on the shared RunnerA3D.
+ * A display is in the background when another canvas is under the mouse,
+ * or, when no canvas is, if its window is not the active window. Rates of
+ * 0 mean no cap. Hidden, minimized and zero-size canvases are never drawn.
+ */
+public class RenderPolicyA3D {
+
+   public static final double DEFAULT_BACKGROUND_FPS = 15;
+
+   private volatile double targetFps;
+   private volatile double backgroundFps;
+
+   /** no cap in the foreground, DEFAULT_BACKGROUND_FPS in the background */
+   public RenderPolicyA3D() {
+      this(0, DEFAULT_BACKGROUND_FPS);
+   }
+
+   public RenderPolicyA3D(double targetFps, double backgroundFps) {
+      this.targetFps = targetFps;
+      this.backgroundFps = backgroundFps;
+   }
+
+   public double getTargetFps() {
+      return targetFps;
+   }
+
+   public void setTargetFps(double fps) {
+      targetFps = fps;
+   }
+
+   public double getBackgroundFps() {
+      return backgroundFps;
+   }
+
+   public void setBackgroundFps(double fps) {
+      backgroundFps = fps;
+   }
+
+   /** minimum nanoseconds between frames, or 0 if not capped */
+   long getFrameIntervalNanos(boolean background) {
+      double fps = targetFps;
+      if (background && backgroundFps > 0 && (fps <= 0 || backgroundFps < fps)) {
+         fps = backgroundFps;
+      }
+      return (fps > 0) ? (long) (1.0e9 / fps) : 0;
+   }
+}
@@ -82,6 +82,8 @@ public abstract class RendererA3D extends DataRenderer {
 
     swParent = new Node();
     swParent.attachChild(swt);
+    // lets SceneA3D map a pick back to this renderer
+    swParent.setUserData(this);
     
     // add to DisplayRenderer
     addSwitch((DisplayRendererA3D) getDisplayRenderer(), swParent);
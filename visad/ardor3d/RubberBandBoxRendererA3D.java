@@ -26,14 +26,22 @@ MA 02111-1307, USA
 
 package visad.ardor3d;
 
+import com.ardor3d.math.ColorRGBA;
+import com.ardor3d.renderer.IndexMode;
+import com.ardor3d.scenegraph.Mesh;
+import com.ardor3d.scenegraph.MeshData;
 import com.ardor3d.scenegraph.Node;
-import com.ardor3d.scenegraph.Spatial;
+import com.ardor3d.scenegraph.hint.LightCombineMode;
+import com.ardor3d.util.GameTaskQueue;
+import com.ardor3d.util.geom.BufferUtils;
 import visad.*;
 
 import java.awt.event.*;
 import javax.swing.*;
+import java.nio.FloatBuffer;
 import java.util.Vector;
 import java.util.Enumeration;
+import java.util.concurrent.Callable;
 import java.rmi.*;
 
 
@@ -53,6 +61,16 @@ public class RubberBandBoxRendererA3D extends DirectManipulationRendererA3D {
   private Node branch = null;
   private Node group = null;
 
+  /** box outline, made on the first drag and rewritten in place after */
+  private transient Mesh boxMesh = null;
+  private transient FloatBuffer boxBuffer = null;
+  /** outline for the next UPDATE task: coordinates, strip lengths, shown */
+  private float[] boxCoords = null;
+  private int boxCount = 0;
+  private int[] boxStrips = null;
+  private boolean boxShown = false;
+  private boolean box_queued = false;
+
   /** this DirectManipulationRenderer is quite different - it does not
       render its data, but only place values into its DataReference
       on right mouse button release;
@@ -285,8 +303,7 @@ public class RubberBandBoxRendererA3D extends DirectManipulationRendererA3D {
   /** mouse button released, ending direct manipulation */
   public synchronized void release_direct() {
     // set data in ref
-    if (group != null) branch.detachChild(group);
-    group = null;
+    hideBox();
     try {
       float[][] samples = new float[2][2];
       f[0] = first_x[xindex][0];
@@ -343,7 +360,7 @@ public class RubberBandBoxRendererA3D extends DirectManipulationRendererA3D {
       float r = findRayManifoldIntersection(true, origin, direction, tuple,
                                             otherindex, othervalue);
       if (r != r) {
-        if (group != null) branch.detachChild(group);
+        hideBox();
         return;
       }
       float[][] xx = {{(float) (origin[0] + r * direction[0])},
@@ -473,35 +490,7 @@ public class RubberBandBoxRendererA3D extends DirectManipulationRendererA3D {
       array.colors = colors;
       array = (VisADLineStripArray) array.adjustSeam(this);
 
-      DisplayImplA3D display = (DisplayImplA3D) getDisplay();
-      Spatial geometry = display.makeGeometry(array);
-  
-      DataDisplayLink[] Links = getLinks();
-      if (Links == null || Links.length == 0) {
-        return;
-      }
-      DataDisplayLink link = Links[0];
-
-      float[] default_values = link.getDefaultValues();
-      GraphicsModeControl mode = (GraphicsModeControl)
-        display.getGraphicsModeControl().clone();
-      float pointSize =
-        default_values[display.getDisplayScalarIndex(Display.PointSize)];
-      float lineWidth =
-        default_values[display.getDisplayScalarIndex(Display.LineWidth)];
-      mode.setPointSize(pointSize, true);
-      mode.setLineWidth(lineWidth, true);
-      
-//      Appearance appearance =
-//        ShadowTypeJ3D.staticMakeAppearance(mode, null, null, geometry, false);
-
-      if (group != null) branch.detachChild(group);
-      group = null;
-
-      //Shape3D shape = new Shape3D(geometry, appearance);
-      group = new Node();
-      group.attachChild(geometry);
-      if (branch != null) branch.attachChild(group);
+      showBox(array.coordinates, array.vertexCount, array.stripVertexCounts);
     } // end try
     catch (VisADException e) {
       // do nothing
@@ -510,6 +499,80 @@ public class RubberBandBoxRendererA3D extends DirectManipulationRendererA3D {
     }
   }
 
+  /** show the box with these line strips; drawn by the next UPDATE task */
+  private void showBox(float[] coordinates, int count, int[] strips) {
+    if (boxCoords == null || boxCoords.length < 3 * count) {
+      boxCoords = new float[3 * count];
+    }
+    System.arraycopy(coordinates, 0, boxCoords, 0, 3 * count);
+    boxCount = count;
+    boxStrips = (strips != null) ? strips : new int[] {count};
+    boxShown = true;
+    queueBoxUpdate();
+  }
+
+  private void hideBox() {
+    boxShown = false;
+    queueBoxUpdate();
+  }
+
+  /** bring the box Mesh up to date from the UPDATE queue; moves made
+      before the queued task runs are folded into it */
+  private void queueBoxUpdate() {
+    if (box_queued) return;
+    box_queued = true;
+
+    final DisplayRendererA3D dspRenderer = (DisplayRendererA3D) getDisplayRenderer();
+    Callable updateCallable = new Callable() {
+      public Object call() {
+        synchronized (RubberBandBoxRendererA3D.this) {
+          box_queued = false;
+          updateBox();
+        }
+        return null;
+      }
+    };
+    dspRenderer.getTaskQueueManager().getQueue(GameTaskQueue.UPDATE).enqueue(updateCallable);
+    dspRenderer.markNeedDraw();
+  }
+
+  /** runs on the UPDATE queue */
+  private void updateBox() {
+    if (!boxShown || branch == null) {
+      if (group != null) group.removeFromParent();
+      return;
+    }
+    if (boxMesh == null) {
+      boxMesh = new Mesh();
+      MeshData meshData = new MeshData();
+      meshData.setIndexMode(IndexMode.LineStrip);
+      boxMesh.setMeshData(meshData);
+      boxMesh.getSceneHints().setLightCombineMode(LightCombineMode.Off);
+      group = new Node();
+      group.attachChild(boxMesh);
+    }
+    boxMesh.setDefaultColor(new ColorRGBA((red & 0xff) / 255f,
+        (green & 0xff) / 255f, (blue & 0xff) / 255f, 1f));
+
+    int n = 3 * boxCount;
+    if (boxBuffer == null || boxBuffer.capacity() < n) {
+      boxBuffer = BufferUtils.createFloatBuffer(n);
+    }
+    boxBuffer.clear();
+    boxBuffer.put(boxCoords, 0, n);
+    boxBuffer.flip();
+    MeshData meshData = boxMesh.getMeshData();
+    meshData.setVertexBuffer(boxBuffer);
+    meshData.setIndexLengths(boxStrips);
+    boxMesh.updateModelBound();
+
+    // doTransform may have made a new branch since the last drag
+    if (group.getParent() != branch) {
+      group.removeFromParent();
+      branch.attachChild(group);
+    }
+  }
+
   public Object clone() {
     return new RubberBandBoxRendererA3D(x, y, mouseModifiersMask,
                                         mouseModifiersValue);
@@ -1,61 +1,220 @@
 package visad.ardor3d;
 
+import com.ardor3d.framework.Canvas;
 import com.ardor3d.framework.FrameHandler;
+import com.ardor3d.input.logical.LogicalLayer;
+import java.awt.Component;
+import java.awt.Frame;
+import java.awt.Window;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import javax.swing.SwingUtilities;
 
 public class RunnerA3D implements Runnable {
    private static final long FrameUpdateIntervalMillis = 5;
-   
+   private static final long CanvasDrawTimeoutMillis = 5000;
+
    private final FrameHandler frameWork;
+   private final LogicalLayer logicalLayer;
    private Thread thread;
    private boolean pause = false;
    private boolean exit = false;
-   
-   public RunnerA3D(FrameHandler frameWork) {
+
+   /* Render on demand: frames are only drawn after some display asked for
+      one (DisplayRendererA3D.markNeedDraw). Input is still polled each interval. */
+   private volatile boolean renderOnDemand = true;
+   private boolean frameRequested = true;
+
+   /* Canvases are drawn here, not by the FrameHandler, so each display's
+      RenderPolicyA3D can be applied. The FrameHandler only runs the Updaters. */
+   private final List<CanvasEntry> canvases = new CopyOnWriteArrayList<CanvasEntry>();
+   private volatile Component priorityCanvas = null;
+
+   public RunnerA3D(FrameHandler frameWork, LogicalLayer logicalLayer) {
       this.frameWork = frameWork;
+      this.logicalLayer = logicalLayer;
    }
-   
+
    public void run() {
         while (!exit) {
            if (!pause) {
-              /* experiment
-              frameWork.getTimer().update();
-              updater.update(frameWork.getTimer());
-              
-              if (dspRenderer.getNeedDraw()) {
+              if (!renderOnDemand || takeFrameRequest()) {
                  frameWork.updateFrame();
+                 drawCanvases();
+              }
+              else {
+                 // mouse and keyboard triggers may request a frame
+                 logicalLayer.checkTriggers(0);
               }
-              */
-              frameWork.updateFrame();
            }
-           delay(FrameUpdateIntervalMillis);
+           waitForFrame(FrameUpdateIntervalMillis);
         }
    }
-   
+
    public void start() {
       if (thread == null) {
          thread = new Thread(this);
          thread.start();
       }
    }
-   
+
    public void toggle() {
       pause = !pause;
    }
-   
+
    public void toggle(boolean on) {
       pause = !on;
    }
-   
+
    public void exit() {
       exit = true;
+      requestFrame();
+   }
+
+   public void setRenderOnDemand(boolean onDemand) {
+      renderOnDemand = onDemand;
+      requestFrame();
    }
-   
-   private void delay(long millis) {
+
+   public boolean getRenderOnDemand() {
+      return renderOnDemand;
+   }
+
+   /** Ask for a frame. Requests made before the next frame starts are coalesced. */
+   public synchronized void requestFrame() {
+      if (!frameRequested) {
+         frameRequested = true;
+         notify();
+      }
+   }
+
+   public void addCanvas(Canvas canvas, DisplayRendererA3D dspRenderer) {
+      canvases.add(new CanvasEntry((Component) canvas, dspRenderer));
+      requestFrame();
+   }
+
+   public void removeCanvas(Canvas canvas) {
+      for (CanvasEntry entry : canvases) {
+         if (entry.canvas == canvas) {
+            canvases.remove(entry);
+         }
+      }
+      if (priorityCanvas == canvas) {
+         priorityCanvas = null;
+      }
+   }
+
+   /** The canvas under the mouse, drawn first and at its full rate; others
+       are drawn at their background rate. null when no canvas is. */
+   public void setPriorityCanvas(Component canvas) {
+      priorityCanvas = canvas;
+      requestFrame();
+   }
+
+   public Component getPriorityCanvas() {
+      return priorityCanvas;
+   }
+
+   private void drawCanvases() {
+      long now = System.nanoTime();
+      Component hot = priorityCanvas;
+      List<CanvasEntry> due = new ArrayList<CanvasEntry>();
+      boolean deferred = false;
+
+      for (CanvasEntry entry : canvases) {
+         // always draw until initialized, the display waits for its RenderContext
+         boolean inited = entry.dspRenderer.getCanvasRenderer().getRenderContext() != null;
+         if (inited) {
+            if (!entry.isVisible()) {
+               continue; // shown or resized marks it dirty again
+            }
+            if (renderOnDemand && !entry.dspRenderer.getNeedDraw()) {
+               continue;
+            }
+            boolean background = (hot != null) ? (entry.canvas != hot) : !entry.isWindowActive();
+            long interval = entry.dspRenderer.getRenderPolicy().getFrameIntervalNanos(background);
+            if (entry.drawn && now - entry.lastDraw < interval) {
+               deferred = true;
+               continue;
+            }
+         }
+         if (entry.canvas == hot) {
+            due.add(0, entry);
+         }
+         else {
+            due.add(entry);
+         }
+      }
+
+      if (!due.isEmpty()) {
+         CountDownLatch latch = new CountDownLatch(due.size());
+         for (CanvasEntry entry : due) {
+            entry.lastDraw = now;
+            entry.drawn = true;
+            ((Canvas) entry.canvas).draw(latch);
+         }
+         try {
+            latch.await(CanvasDrawTimeoutMillis, TimeUnit.MILLISECONDS);
+         }
+         catch (InterruptedException e) {
+         }
+      }
+
+      if (deferred) {
+         // capped canvases still need a frame, come back next interval
+         synchronized (this) {
+            frameRequested = true;
+         }
+      }
+   }
+
+   private synchronized boolean takeFrameRequest() {
+      boolean requested = frameRequested;
+      frameRequested = false;
+      return requested;
+   }
+
+   /* Wait for at least millis; when idle, return early if a frame is requested */
+   private void waitForFrame(long millis) {
       try {
+         synchronized (this) {
+            if (renderOnDemand && !frameRequested) {
+               wait(millis);
+               return;
+            }
+         }
          java.lang.Thread.sleep(millis);
       }
       catch (Exception e) {
          e.printStackTrace();
-      }      
+      }
+   }
+
+   private static class CanvasEntry {
+      final Component canvas;
+      final DisplayRendererA3D dspRenderer;
+      long lastDraw = 0;
+      boolean drawn = false;
+
+      CanvasEntry(Component canvas, DisplayRendererA3D dspRenderer) {
+         this.canvas = canvas;
+         this.dspRenderer = dspRenderer;
+      }
+
+      boolean isVisible() {
+         if (!canvas.isShowing() || canvas.getWidth() <= 0 || canvas.getHeight() <= 0) {
+            return false;
+         }
+         Window window = SwingUtilities.getWindowAncestor(canvas);
+         return !(window instanceof Frame && (((Frame) window).getExtendedState() & Frame.ICONIFIED) != 0);
+      }
+
+      boolean isWindowActive() {
+         Window window = SwingUtilities.getWindowAncestor(canvas);
+         return window == null || window.isActive();
+      }
    }
-}
\ No newline at end of file
+}
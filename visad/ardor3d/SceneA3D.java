@@ -1,13 +1,33 @@
 package visad.ardor3d;
 
 import com.ardor3d.annotation.MainThread;
+import com.ardor3d.bounding.BoundingVolume;
 import com.ardor3d.framework.Scene;
+import com.ardor3d.intersection.IntersectionRecord;
+import com.ardor3d.intersection.PickData;
 import com.ardor3d.intersection.PickResults;
+import com.ardor3d.intersection.Pickable;
+import com.ardor3d.intersection.PrimitiveKey;
+import com.ardor3d.intersection.PrimitivePickData;
 import com.ardor3d.math.Ray3;
+import com.ardor3d.math.Vector3;
+import com.ardor3d.renderer.IndexMode;
 import com.ardor3d.renderer.Renderer;
+import com.ardor3d.scenegraph.Mesh;
+import com.ardor3d.scenegraph.MeshData;
 import com.ardor3d.scenegraph.Node;
+import com.ardor3d.scenegraph.Spatial;
+import com.ardor3d.scenegraph.hint.CullHint;
+import com.ardor3d.scenegraph.hint.PickingHint;
 import com.ardor3d.util.GameTaskQueue;
+import java.nio.FloatBuffer;
 import java.rmi.RemoteException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import visad.DataRenderer;
 import visad.DisplayEvent;
 import visad.VisADException;
 
@@ -16,6 +36,18 @@ public final class SceneA3D implements Scene {
     private final Node root;
     private DisplayRendererA3D dspRenderer;
 
+    /** intersect the triangles of picked meshes, not just their bounds */
+    private volatile boolean primitivePicking = true;
+
+    /** the thread that last drew this scene and ran its queued tasks */
+    private volatile Thread renderThread = null;
+
+    /** default for pickTimeoutMillis */
+    public static final long DEFAULT_PICK_TIMEOUT_MILLIS = 1000;
+
+    /** longest a pick from another thread waits for the next frame */
+    private volatile long pickTimeoutMillis = DEFAULT_PICK_TIMEOUT_MILLIS;
+
     public SceneA3D(DisplayRendererA3D dspRenderer) {
         this.dspRenderer = dspRenderer;
         root = new Node("root");
@@ -28,6 +60,14 @@ public final class SceneA3D implements Scene {
     @Override
     @MainThread
     public boolean renderUnto(final Renderer renderer) {
+        renderThread = Thread.currentThread();
+
+        // nothing changed since the last frame: keep what is on screen
+        if (Ardor3D.getRenderOnDemand() && !dspRenderer.takeNeedDraw()) {
+            return false;
+        }
+
+        dspRenderer.updateLabelLayer();
 
         renderer.draw(root);
             
@@ -46,9 +86,214 @@ public final class SceneA3D implements Scene {
         return true;
     }
 
+    /**
+     * Pick the meshes drawn along pickRay, in world coordinates, nearest
+     * first.  Only the shown children of a SwitchNode are visited, so
+     * hidden animation steps and disabled renderers are not picked.
+     * DataRenderer and vertex of a pick are given by getDataRenderer and
+     * getVertexIndex.<P>
+     *
+     * The scene graph is only changed by the UPDATE queue, on the thread
+     * that draws the scene.  A pick from any other thread is run as an
+     * UPDATE task and waited for; if no frame runs it within
+     * getPickTimeoutMillis(), e.g. while the display is hidden, the
+     * results are empty.  Callers that must not block use pickLater.
+     */
     @Override
     public PickResults doPick(final Ray3 pickRay) {
-        // does nothing.
+        final Thread thread = renderThread;
+        if (thread == null || thread == Thread.currentThread()) {
+            return pick(root, pickRay, primitivePicking);
+        }
+        final Future<PickResults> future = pickLater(pickRay);
+        try {
+            return future.get(pickTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (final ExecutionException | TimeoutException e) {
+        }
+        future.cancel(false);
+        return new ScenePickResults(primitivePicking);
+    }
+
+    /**
+     * Queue a pick along pickRay for the next frame and return without
+     * waiting.  The Future holds the same results doPick would; it does
+     * not complete while no frames are drawn.
+     */
+    public Future<PickResults> pickLater(final Ray3 pickRay) {
+        final boolean primitives = primitivePicking;
+        final Callable<PickResults> pickCallable = new Callable<PickResults>() {
+            public PickResults call() {
+                return pick(root, pickRay, primitives);
+            }
+        };
+        final Future<PickResults> future =
+            dspRenderer.getTaskQueueManager().getQueue(GameTaskQueue.UPDATE).enqueue(pickCallable);
+        Ardor3D.requestFrame();
+        return future;
+    }
+
+    /**
+     * Set how long doPick, called from a thread other than the one that
+     * draws the scene, waits for the next frame before giving up.
+     * @param millis 0 to return empty results unless called on the
+     *               drawing thread
+     */
+    public void setPickTimeoutMillis(final long millis) {
+        pickTimeoutMillis = Math.max(0, millis);
+    }
+
+    public long getPickTimeoutMillis() {
+        return pickTimeoutMillis;
+    }
+
+    /**
+     * Intersect the triangles of meshes with the pick ray, rather than
+     * only their bounding volumes.  Lines and points are always matched
+     * by their bounds.
+     */
+    public void setPrimitivePicking(final boolean primitivePicking) {
+        this.primitivePicking = primitivePicking;
+    }
+
+    public boolean getPrimitivePicking() {
+        return primitivePicking;
+    }
+
+    /** pick the shown meshes under spatial along ray, nearest first; call
+        only from the thread that draws the scene */
+    static PickResults pick(final Spatial spatial, final Ray3 ray, final boolean primitives) {
+        final ScenePickResults results = new ScenePickResults(primitives);
+        results.setCheckDistance(true);
+        findPick(spatial, ray, results);
+        return results;
+    }
+
+    private static void findPick(final Spatial spatial, final Ray3 ray, final PickResults results) {
+        if (spatial == null || spatial.getSceneHints().getCullHint() == CullHint.Always
+                || !spatial.getSceneHints().isPickingHintEnabled(PickingHint.Pickable)) {
+            return;
+        }
+        final BoundingVolume bound = spatial.getWorldBound();
+        if (bound == null || !bound.intersects(ray)) {
+            return;
+        }
+
+        if (spatial instanceof SwitchNode) {
+            final SwitchNode sw = (SwitchNode) spatial;
+            for (int i = sw.getNextVisible(0); i >= 0; i = sw.getNextVisible(i + 1)) {
+                if (i >= sw.getNumberOfChildren()) {
+                    break;
+                }
+                findPick(sw.getChild(i), ray, results);
+            }
+        } else if (spatial instanceof Node) {
+            final Node node = (Node) spatial;
+            for (int i = 0; i < node.getNumberOfChildren(); i++) {
+                findPick(node.getChild(i), ray, results);
+            }
+        } else if (spatial instanceof Mesh) {
+            results.addPick(ray, (Mesh) spatial);
+        }
+    }
+
+    /**
+     * Return the DataRenderer whose scene graph holds spatial, or null
+     * for the display's own box, cursor and other nodes.
+     */
+    public static DataRenderer getDataRenderer(Spatial spatial) {
+        while (spatial != null) {
+            if (spatial.getUserData() instanceof DataRenderer) {
+                return (DataRenderer) spatial.getUserData();
+            }
+            spatial = spatial.getParent();
+        }
         return null;
     }
+
+    /**
+     * Return the index of the vertex of a picked Mesh closest to the pick
+     * ray: among the vertices of the triangle hit for a primitive pick,
+     * or among all vertices otherwise.  This indexes the Mesh's vertex
+     * buffer only: missing and range-selected samples are not drawn, so
+     * it is not in general the index of a data sample.  Returns -1 if
+     * there are no vertices.
+     */
+    public static int getVertexIndex(final PickData data) {
+        if (!(data.getTarget() instanceof Mesh)) {
+            return -1;
+        }
+        final Mesh mesh = (Mesh) data.getTarget();
+        final MeshData meshData = mesh.getMeshData();
+        final FloatBuffer vertices = meshData.getVertexBuffer();
+        if (vertices == null) {
+            return -1;
+        }
+        final int count = meshData.getVertexCount();
+
+        int[] candidates = null;
+        final IntersectionRecord record = data.getIntersectionRecord();
+        if (data instanceof PrimitivePickData && record != null && record.getNumberOfIntersections() > 0) {
+            final PrimitiveKey key = record.getIntersectionPrimitive(0);
+            if (key != null) {
+                candidates = meshData.getPrimitiveIndices(key.getPrimitiveIndex(), key.getSection(), null);
+            }
+        }
+
+        final Ray3 ray = data.getRay();
+        final Vector3 local = new Vector3();
+        final Vector3 world = new Vector3();
+        double best = Double.MAX_VALUE;
+        int bestIndex = -1;
+        final int n = (candidates != null) ? candidates.length : count;
+        for (int j = 0; j < n; j++) {
+            final int i = (candidates != null) ? candidates[j] : j;
+            if (i < 0 || i >= count) {
+                continue;
+            }
+            local.set(vertices.get(3 * i), vertices.get(3 * i + 1), vertices.get(3 * i + 2));
+            mesh.localToWorld(local, world);
+            final double d = ray.distanceSquared(world, null);
+            if (d < best) {
+                best = d;
+                bestIndex = i;
+            }
+        }
+        return bestIndex;
+    }
+
+    /** picks by triangle for triangle meshes when primitives is set, by bounds otherwise */
+    private static final class ScenePickResults extends PickResults {
+        private final boolean primitives;
+
+        ScenePickResults(final boolean primitives) {
+            this.primitives = primitives;
+        }
+
+        @Override
+        public void addPick(final Ray3 ray, final Pickable target) {
+            if (primitives && target instanceof Mesh && hasTriangles((Mesh) target)
+                    && target.supportsPrimitivesIntersectionRecord()) {
+                final PickData data = new PrimitivePickData(ray, target);
+                final IntersectionRecord record = data.getIntersectionRecord();
+                if (record != null && record.getNumberOfIntersections() > 0) {
+                    addPickData(data);
+                }
+            } else if (target.intersectsWorldBound(ray)) {
+                addPickData(new PickData(ray, target, willCheckDistance()));
+            }
+        }
+
+        @Override
+        public void processPick() {
+        }
+
+        private static boolean hasTriangles(final Mesh mesh) {
+            final IndexMode mode = mesh.getMeshData().getIndexMode(0);
+            return mode == IndexMode.Triangles || mode == IndexMode.TriangleStrip
+                    || mode == IndexMode.TriangleFan || mode == IndexMode.Quads
+                    || mode == IndexMode.QuadStrip;
+        }
+    }
  }
@@ -96,6 +96,8 @@ public class ShadowAnimationFunctionTypeA3D extends ShadowFunctionTypeA3D {
       boolean[] old_mark = null;
       int old_len = 0;
       boolean reuse = ((AnimationRendererA3D) renderer).getReUseFrames();
+      boolean progressive =
+        ((AnimationRendererA3D) renderer).getProgressiveAnimation();
       if (group instanceof Node &&
           ((Node) group).getNumberOfChildren() > 0) {
         Node g = (Node) ((Node) group).getChild(0);
@@ -190,28 +192,57 @@ public class ShadowAnimationFunctionTypeA3D extends ShadowFunctionTypeA3D {
           ((AnimationRendererA3D) renderer).getSetSetOnReUseFrames()) {
         control.setSet(domain_set, true);
       }
-      else {
+      else if (!progressive) {
+        // progressive keeps the user's place, which decides the build order
         control.setCurrent(0);
       }
       old_nodes = null;
       old_times = null;
       old_mark = null;
 
+      // only build the frames the residency budget admits; the rest
+      // are built in the background as playback approaches them
+      FrameResidencyA3D residency =
+        ((AnimationRendererA3D) renderer).getFrameResidency();
+      if (residency != null) {
+        residency.setFrames(this, swit, nodes, (Field) data, value_array,
+                            default_values, control);
+      }
+
+      // progressive or budgeted: current frame first, then by distance
+      // from it in the play direction
+      int[] order = (progressive || residency != null) ?
+        control.getFrameBuildOrder(domain_set) : null;
+
       // render new frames
-      for (int i=0; i<len; i++) {
+      for (int k=0; k<len; k++) {
+        int i = (order != null) ? order[k] : k;
         if (!mark[i]) {
+          if (residency != null && !residency.admit()) continue;
           // not necessary, but perhaps if this is modified
           // int[] lat_lon_indices = renderer.getLatLonIndices();
           Node branch = (Node) makeBranch();
           ((AnimationRendererA3D) renderer).setVisADBranch(nodes[i]);
-          recurseRange(branch, ((Field) data).getSample(i),
+          recurseFrame(branch, ((Field) data).getSample(i),
                        value_array, default_values, renderer);
           ((AnimationRendererA3D) renderer).setVisADBranch(null);
-          nodes[i].attachChild(branch);
+          if (residency != null) {
+            residency.frameBuilt(i, branch);
+          }
+          if (progressive) {
+            attachFrame(nodes[i], branch, swit, i, control, renderer);
+          }
+          else {
+            nodes[i].attachChild(branch);
+            ((AVControlA3D) control).setFrameReady(nodes[i], true);
+          }
           // not necessary, but perhaps if this is modified
           // renderer.setLatLonIndices(lat_lon_indices);
         }
       }
+      if (residency != null) {
+        residency.finishBuild();
+      }
     }
     else {
       super.doTransform(group, data, value_array, default_values, renderer);
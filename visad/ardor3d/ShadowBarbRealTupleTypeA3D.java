@@ -29,6 +29,8 @@ package visad.ardor3d;
 import visad.*;
 import visad.java3d.*;
 
+import visad.util.ThreadManager;
+
 import java.rmi.*;
 
 /**
@@ -148,6 +150,17 @@ public class ShadowBarbRealTupleTypeA3D extends ShadowRealTupleTypeA3D {
     float scale = flowScale; // ????
     float pt_size = 0.25f * flowScale; // ????
 
+    // flat barbs are drawn unlit in 2-D, so they need no normals there
+    boolean lit = !display.getDisplayRenderer().getMode2D();
+
+    // barbs placed from shapes built once per speed class and hemisphere
+    BarbGlyphCacheA3D glyphs =
+      BarbGlyphCacheA3D.forRenderer(renderer, scale, pt_size);
+    if (glyphs != null && !direct) {
+      return placeBarbs(glyphs, len, flow_values, spatial_values,
+                        color_values, range_select, south, renderer, lit);
+    }
+
     // flow vector
     float f0 = 0.0f, f1 = 0.0f, f2 = 0.0f;
     for (int j=0; j<len; j++) {
@@ -218,7 +231,11 @@ public class ShadowBarbRealTupleTypeA3D extends ShadowRealTupleTypeA3D {
         }
         int oldnv = numv[0];
         int oldnt = numt[0];
-        float mbarb[] =
+        float mbarb[] = (glyphs != null) ?
+          glyphs.makeVector(south[j],
+                   spatial_values[0][j], spatial_values[1][j],
+                   spatial_values[2][j], f0, f1, vx, vy, vz,
+                   numv, tx, ty, tz, numt) :
           ((BarbRenderer) renderer).makeVector(south[j],
                    spatial_values[0][j], spatial_values[1][j],
                    spatial_values[2][j], scale, pt_size, f0, f1, vx, vy, vz,
@@ -299,7 +316,6 @@ public class ShadowBarbRealTupleTypeA3D extends ShadowRealTupleTypeA3D {
       tarray.vertexCount = nt;
 
       coordinates = new float[3 * nt];
-      float[] normals = new float[3 * nt];
 
       m = 0;
       for (int i=0; i<nt; i++) {
@@ -309,13 +325,16 @@ public class ShadowBarbRealTupleTypeA3D extends ShadowRealTupleTypeA3D {
       }
       tarray.coordinates = coordinates;
 
-      m = 0;
-      for (int i=0; i<nt; i++) {
-        normals[m++] = 0.0f;
-        normals[m++] = 0.0f;
-        normals[m++] = 1.0f;
+      if (lit) {
+        float[] normals = new float[3 * nt];
+        m = 0;
+        for (int i=0; i<nt; i++) {
+          normals[m++] = 0.0f;
+          normals[m++] = 0.0f;
+          normals[m++] = 1.0f;
+        }
+        tarray.normals = normals;
       }
-      tarray.normals = normals;
 
       if (color_values != null) {
         colors = new byte[numColors * nt];
@@ -346,5 +365,192 @@ public class ShadowBarbRealTupleTypeA3D extends ShadowRealTupleTypeA3D {
     return arrays;
   }
 
-}
+  /** points per thread below which barbs are placed on one thread */
+  private static final int MIN_BARBS_PER_THREAD = 16384;
+
+  /**
+   * Two passes: look up each point's glyph and output offsets, then fill
+   * the final coordinate and color arrays, split across threads.
+   * Triangle normals are made only if lit; unlit triangles have none
+   * and addToGroup draws them with lighting off.
+   */
+  private static VisADGeometryArray[] placeBarbs(BarbGlyphCacheA3D glyphs,
+               final int len, final float[][] flow_values,
+               final float[][] spatial_values, final byte[][] color_values,
+               boolean[][] range_select, boolean[] south, DataRenderer renderer,
+               boolean lit)
+         throws VisADException {
+    final int flen = flow_values[0].length;
+
+    // with thinning, place the barbs coarsest level first
+    FlowThinningA3D.Ranking ranking = null;
+    DisplayRenderer dspRenderer = renderer.getDisplayRenderer();
+    if (dspRenderer instanceof DisplayRendererA3D &&
+        ((DisplayRendererA3D) dspRenderer).getFlowThinning().isEnabled()) {
+      ranking = FlowThinningA3D.rank(spatial_values[0], spatial_values[1],
+                                     range_select[0], len);
+      if (ranking == null) return null;
+    }
+    final int[] order = (ranking != null) ? ranking.order : null;
+    final int n = (order != null) ? order.length : len;
+
+    final BarbGlyphCacheA3D.Glyph[] glyph = new BarbGlyphCacheA3D.Glyph[n];
+    final int[] voff = new int[n + 1];
+    final int[] toff = new int[n + 1];
+    for (int p=0; p<n; p++) {
+      int j = (order != null) ? order[p] : p;
+      voff[p+1] = voff[p];
+      toff[p+1] = toff[p];
+      if (range_select[0] == null || range_select[0][j]) {
+        int k = (flen == 1) ? 0 : j;
+        glyph[p] = glyphs.getGlyph(south[j], flow_values[0][k], flow_values[1][k]);
+        voff[p+1] += glyph[p].lx.length;
+        toff[p+1] += glyph[p].tx.length;
+      }
+    }
+    int nv = voff[n];
+    int nt = toff[n];
+    if (nv == 0) return null;
 
+    final int numColors = (color_values != null) ? color_values.length : 0;
+    final float[] vcoords = new float[3 * nv];
+    final float[] tcoords = new float[3 * nt];
+    final byte[] vcolors = (numColors > 0) ? new byte[numColors * nv] : null;
+    final byte[] tcolors = (numColors > 0 && nt > 0) ? new byte[numColors * nt] : null;
+    final float[] normals = (lit && nt > 0) ? new float[3 * nt] : null;
+
+    int nthreads = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(),
+                                        n / MIN_BARBS_PER_THREAD));
+    ThreadManager threadManager = new ThreadManager("barb placement");
+    for (int t=0; t<nthreads; t++) {
+      final int p0 = (int) ((long) n * t / nthreads);
+      final int p1 = (int) ((long) n * (t + 1) / nthreads);
+      threadManager.addRunnable(new ThreadManager.MyRunnable() {
+        public void run() {
+          for (int p=p0; p<p1; p++) {
+            if (glyph[p] == null) continue;
+            int j = (order != null) ? order[p] : p;
+            int k = (flen == 1) ? 0 : j;
+            BarbGlyphCacheA3D.place(glyph[p], spatial_values[0][j],
+                spatial_values[1][j], spatial_values[2][j],
+                flow_values[0][k], flow_values[1][k],
+                vcoords, voff[p], tcoords, toff[p]);
+            if (normals != null) {
+              for (int i=toff[p]; i<toff[p+1]; i++) {
+                normals[3*i+2] = 1.0f;
+              }
+            }
+            if (vcolors != null) {
+              int ci = (color_values[0].length > 1) ? j : 0;
+              for (int i=voff[p]; i<voff[p+1]; i++) {
+                for (int c=0; c<numColors; c++) {
+                  vcolors[numColors*i+c] = color_values[c][ci];
+                }
+              }
+              if (tcolors != null) {
+                for (int i=toff[p]; i<toff[p+1]; i++) {
+                  for (int c=0; c<numColors; c++) {
+                    tcolors[numColors*i+c] = color_values[c][ci];
+                  }
+                }
+              }
+            }
+          }
+        }
+      });
+    }
+    try {
+      if (nthreads == 1) {
+        threadManager.runSequentially();
+      }
+      else {
+        threadManager.runInParallel();
+      }
+    }
+    catch (VisADException e) {
+      throw e;
+    }
+    catch (Exception e) {
+      throw new VisADException("ShadowBarbRealTupleTypeA3D: " + e);
+    }
+
+    VisADLineArray array;
+    if (ranking != null) {
+      FlowThinningA3D.LineArray larray = new FlowThinningA3D.LineArray();
+      larray.levels = ranking.makeLevels(voff);
+      array = larray;
+    }
+    else {
+      array = new VisADLineArray();
+    }
+    array.vertexCount = nv;
+    array.coordinates = vcoords;
+    array.colors = vcolors;
+    // WLH 30 May 2002; an array split at the seam is drawn unthinned
+    array = (VisADLineArray) array.adjustLongitudeBulk(renderer);
+    if (nt == 0) {
+      return new VisADGeometryArray[] {array};
+    }
+
+    VisADTriangleArray tarray;
+    if (ranking != null) {
+      FlowThinningA3D.TriangleArray ttarray = new FlowThinningA3D.TriangleArray();
+      ttarray.levels = ranking.makeLevels(toff);
+      tarray = ttarray;
+    }
+    else {
+      tarray = new VisADTriangleArray();
+    }
+    tarray.vertexCount = nt;
+    tarray.coordinates = tcoords;
+    tarray.normals = normals;
+    tarray.colors = tcolors;
+    tarray = (VisADTriangleArray) tarray.adjustLongitudeBulk(renderer);
+    return new VisADGeometryArray[] {array, tarray};
+  }
+
+  /**
+   * Time placeBarbs, lit and unlit, on a random wind field:
+   * java visad.ardor3d.ShadowBarbRealTupleTypeA3D [points [runs]]
+   * with 1000000 points and 5 runs by default.
+   */
+  public static void main(String[] args) throws VisADException {
+    int len = (args.length > 0) ? Integer.parseInt(args[0]) : 1000000;
+    int runs = (args.length > 1) ? Integer.parseInt(args[1]) : 5;
+
+    java.util.Random random = new java.util.Random(1);
+    float[][] spatial_values = new float[3][len];
+    float[][] flow_values = new float[3][len];
+    byte[][] color_values = new byte[3][len];
+    boolean[] south = new boolean[len];
+    for (int i=0; i<len; i++) {
+      spatial_values[0][i] = 2.0f * random.nextFloat() - 1.0f;
+      spatial_values[1][i] = 2.0f * random.nextFloat() - 1.0f;
+      flow_values[0][i] = 60.0f * random.nextFloat() - 30.0f;
+      flow_values[1][i] = 60.0f * random.nextFloat() - 30.0f;
+      color_values[0][i] = (byte) random.nextInt(256);
+      color_values[1][i] = (byte) random.nextInt(256);
+      color_values[2][i] = (byte) random.nextInt(256);
+      south[i] = (spatial_values[1][i] < 0.0f);
+    }
+    boolean[][] range_select = new boolean[1][];
+
+    DataRenderer renderer = new BarbRendererA3D();
+    BarbGlyphCacheA3D glyphs =
+      BarbGlyphCacheA3D.forRenderer(renderer, 0.02f, 0.005f);
+    for (int r=0; r<runs; r++) {
+      for (int l=0; l<2; l++) {
+        boolean lit = (l == 0);
+        long t = System.nanoTime();
+        VisADGeometryArray[] arrays = placeBarbs(glyphs, len, flow_values,
+            spatial_values, color_values, range_select, south, renderer, lit);
+        t = System.nanoTime() - t;
+        int nt = (arrays.length > 1) ? arrays[1].vertexCount : 0;
+        System.out.println((lit ? "lit   " : "unlit ") + len + " barbs: " +
+            (t / 1000000) + " ms, " + arrays[0].vertexCount +
+            " line and " + nt + " triangle vertices");
+      }
+    }
+  }
+
+}
@@ -81,6 +81,11 @@ public class ShadowCurveSetTypeA3D extends ShadowSetTypeA3D {
     }
 
     ((CurveManipulationRendererA3D) renderer).default_values = default_values;
+    int[] lengths = new int[sets.length];
+    for (int i=0; i<sets.length; i++) {
+      lengths[i] = sets[i].getLength();
+    }
+    ((CurveManipulationRendererA3D) renderer).curve_lengths = lengths;
 
     boolean post = ((ShadowFunctionOrSetType) getAdaptedShadowType()).
                         doTransform(group, data, value_array,
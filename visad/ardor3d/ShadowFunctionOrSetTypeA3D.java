@@ -36,6 +36,7 @@ import com.ardor3d.renderer.state.TextureState;
 import com.ardor3d.scenegraph.Node;
 import com.ardor3d.scenegraph.Spatial;
 import visad.ardor3d.SwitchNode;
+import com.ardor3d.util.GameTaskQueue;
 import com.ardor3d.util.TextureManager;
 import visad.*;
 import visad.util.ThreadManager;
@@ -44,6 +45,7 @@ import visad.util.ThreadManager;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Vector;
+import java.util.concurrent.Callable;
 
 import java.rmi.*;
 
@@ -218,7 +220,7 @@ public class ShadowFunctionOrSetTypeA3D extends ShadowTypeA3D {
       // create and add switch with nodes for animation images
       domainLength = domainSet.getLength(); // num of domain nodes
       swit = (SwitchNode) makeSwitch(domainLength);
-      AnimationControlA3D control = (AnimationControlA3D)timeMap.getControl();
+      final AnimationControlA3D control = (AnimationControlA3D)timeMap.getControl();
       
       if (!doTrajectory) {
         addSwitch(group, swit, control, domainSet, renderer);
@@ -252,16 +254,39 @@ public class ShadowFunctionOrSetTypeA3D extends ShadowTypeA3D {
           branches.add(branch);
       }      
 
+      // progressive: build the current frame alone and attach it, then
+      // queue the rest by distance from it in the play direction, each
+      // attached as it completes; the branch is already live (see
+      // DefaultRendererA3D.doTransform), so frames show while the rest build
+      final boolean progressive = !doTrajectory &&
+        (renderer instanceof DefaultRendererA3D) &&
+        ((DefaultRendererA3D) renderer).getProgressiveAnimation();
+      int[] order = progressive ? control.getFrameBuildOrder(domainSet) : null;
+      int first = 0;
+      if (progressive && domainLength > 0) {
+        int i = order[0];
+        Node branch = (Node) branches.get(i);
+        recurseFrame(branch, ((Field) data).getSample(i),
+                     value_array, default_values, renderer);
+        attachFrame((Node) swit.getChild(i), branch, swit, i, control, renderer);
+        first = 1;
+      }
+
       ThreadManager threadManager = new ThreadManager("animation rendering");
-      for (int i=0; i<domainLength; i++) {
+      for (int k=first; k<domainLength; k++) {
+          final int i = (order != null) ? order[k] : k;
           final Node branch = (Node) branches.get(i);
           final Data sample  = ((Field) data).getSample(i);
           final Node node = (Node) swit.getChild(i);
+          final SwitchNode fswit = swit;
           threadManager.addRunnable(new ThreadManager.MyRunnable() {
                   public void run()  throws Exception {
-                      recurseRange(branch, sample,
+                      recurseFrame(branch, sample,
                                    value_array, default_values, renderer);
-                      if (!doTrajectory) {
+                      if (progressive) {
+                        attachFrame(node, branch, fswit, i, control, renderer);
+                      }
+                      else if (!doTrajectory) {
                         node.attachChild(branch);          
                       }
                   }
@@ -1225,6 +1250,36 @@ public class ShadowFunctionOrSetTypeA3D extends ShadowTypeA3D {
     ((Node) group).attachChild(branch);
   }
 
+  /** attach a completed animation frame through the UPDATE queue, then
+      let control show it if it is the frame being held for */
+  void attachFrame(final Node frame, final Node branch, final SwitchNode sw,
+                   final int index, final AVControlA3D control,
+                   DataRenderer renderer) {
+    Callable updateCallable = new Callable() {
+      public Object call() {
+        frame.attachChild(branch);
+        control.frameReady(sw, index);
+        return null;
+      }
+    };
+    GameTaskQueue uQueue = ((DisplayRendererA3D) renderer.getDisplayRenderer()).getTaskQueueManager().getQueue(GameTaskQueue.UPDATE);
+    uQueue.enqueue(updateCallable);
+  }
+
+  /** recurseRange for one animation frame; no postProcess follows a
+      frame, so terminal samples under it are drawn into group at once */
+  boolean recurseFrame(Object group, Data data, float[] value_array,
+                       float[] default_values, DataRenderer renderer)
+         throws VisADException, RemoteException {
+    boolean nested = TerminalBatchA3D.beginFrame();
+    try {
+      return recurseRange(group, data, value_array, default_values, renderer);
+    }
+    finally {
+      TerminalBatchA3D.endFrame(nested);
+    }
+  }
+
   public boolean recurseRange(Object group, Data data, float[] value_array,
                              float[] default_values, DataRenderer renderer)
          throws VisADException, RemoteException {
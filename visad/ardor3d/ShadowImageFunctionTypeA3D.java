@@ -984,7 +984,7 @@ public class ShadowImageFunctionTypeA3D extends ShadowFunctionTypeA3D {
           // int[] lat_lon_indices = renderer.getLatLonIndices();
           Node branch = (Node) makeBranch();
           ((ImageRendererA3D) renderer).setVisADBranch(nodes[i]);
-          recurseRange(branch, ((Field) data).getSample(i),
+          recurseFrame(branch, ((Field) data).getSample(i),
                        value_array, default_values, renderer);
           ((ImageRendererA3D) renderer).setVisADBranch(null);
           nodes[i].attachChild(branch);
@@ -57,6 +57,20 @@ public class ShadowRealTypeA3D extends ShadowScalarTypeA3D {
   public boolean doTransform(Object group, Data data, float[] value_array,
                       float[] default_values, DataRenderer renderer)
          throws VisADException, RemoteException {
+    if (adaptedShadowType.getIsTerminal() &&
+        adaptedShadowType.getLevelOfDifficulty() == LEGAL &&
+        TerminalBatchA3D.isDeferred() &&
+        (data == null || data.isMissing() || TerminalBatchA3D.isBatchable(data))) {
+      // collect the samples, postProcess draws them together
+      if (data != null && !data.isMissing()) {
+        TerminalBatchA3D.Sample sample = TerminalBatchA3D.makeSample(data,
+            value_array, default_values, renderer);
+        if (sample != null) {
+          AccumulationVector.addElement(sample);
+        }
+      }
+      return true;
+    }
     boolean post = ((ShadowRealType) adaptedShadowType).
                         doTransform(group, data, value_array,
                                     default_values, renderer, this);
@@ -69,8 +83,12 @@ public class ShadowRealTypeA3D extends ShadowScalarTypeA3D {
     if (adaptedShadowType.getIsTerminal()) {
       int LevelOfDifficulty = adaptedShadowType.getLevelOfDifficulty();
       if (LevelOfDifficulty == LEGAL) {
-        throw new UnimplementedException("terminal LEGAL unimplemented: " +
-                                         "ShadowRealTypeJ3D.postProcess");
+        try {
+          TerminalBatchA3D.render(this, group, AccumulationVector);
+        }
+        catch (RemoteException e) {
+          throw new VisADException("ShadowRealTypeA3D.postProcess: " + e);
+        }
       }
       else {
         // nothing to do
@@ -57,6 +57,16 @@ public class ShadowTextTypeA3D extends ShadowScalarTypeA3D {
   public boolean doTransform(Object group, Data data, float[] value_array,
                       float[] default_values, DataRenderer renderer)
          throws VisADException, RemoteException {
+    if (adaptedShadowType.getIsTerminal() &&
+        adaptedShadowType.getLevelOfDifficulty() == LEGAL &&
+        TerminalBatchA3D.isDeferred()) {
+      // collect the samples, postProcess draws them together
+      if (data instanceof Text && !data.isMissing()) {
+        AccumulationVector.addElement(new TextSample(((Text) data).getValue(),
+            (float[]) value_array.clone(), default_values, renderer));
+      }
+      return true;
+    }
     boolean post = ((ShadowTextType) adaptedShadowType).
                         doTransform(group, data, value_array,
                                     default_values, renderer, this);
@@ -69,8 +79,12 @@ public class ShadowTextTypeA3D extends ShadowScalarTypeA3D {
     if (adaptedShadowType.getIsTerminal()) {
       int LevelOfDifficulty = adaptedShadowType.getLevelOfDifficulty();
       if (LevelOfDifficulty == LEGAL) {
-        throw new UnimplementedException("terminal LEGAL unimplemented: " +
-                                         "ShadowTextTypeJ3D.postProcess");
+        try {
+          renderAccumulation(group);
+        }
+        catch (RemoteException e) {
+          throw new VisADException("ShadowTextTypeA3D.postProcess: " + e);
+        }
       }
       else {
         // nothing to do
@@ -82,5 +96,99 @@ public class ShadowTextTypeA3D extends ShadowScalarTypeA3D {
     AccumulationVector.removeAllElements();
   }
 
-}
+  /** draw all accumulated Text samples as one text geometry when their
+      display values go only to the Cartesian axes and colors, by the
+      rule TerminalBatchA3D uses for Reals, else one
+      terminalTupleOrScalar per sample */
+  private void renderAccumulation(Object group)
+          throws VisADException, RemoteException {
+    int n = AccumulationVector.size();
+    if (n == 0) return;
+
+    Vector MapVector = display.getMapVector();
+    int valueArrayLength = display.getValueArrayLength();
+
+    TextControl text_control = null;
+    for (int i = 0; i < MapVector.size(); i++) {
+      ScalarMap map = (ScalarMap) MapVector.elementAt(i);
+      if (Display.Text.equals(map.getDisplayScalar()) &&
+          map.getScalar().equals(getType())) {
+        text_control = (TextControl) map.getControl();
+      }
+    }
+    if (text_control == null) return;
+
+    boolean[] used = new boolean[valueArrayLength];
+    for (int j = 0; j < n; j++) {
+      TextSample sample = (TextSample) AccumulationVector.elementAt(j);
+      for (int i = 0; i < valueArrayLength; i++) {
+        if (sample.value_array[i] == sample.value_array[i]) used[i] = true;
+      }
+    }
+    // display value index of each axis, color, Alpha and Shape, or -1
+    int[] index = TerminalBatchA3D.batchTargets(display, used);
 
+    if (index == null || index[TerminalBatchA3D.SHAPE] >= 0) {
+      int[] valueToScalar = display.getValueToScalar();
+      for (int j = 0; j < n; j++) {
+        TextSample sample = (TextSample) AccumulationVector.elementAt(j);
+        float[][] display_values = new float[valueArrayLength][];
+        int[] inherited_values = new int[valueArrayLength];
+        for (int i = 0; i < valueArrayLength; i++) {
+          if (sample.value_array[i] == sample.value_array[i]) {
+            display_values[i] = new float[] {sample.value_array[i]};
+            inherited_values[i] = 1;
+          }
+        }
+        terminalTupleOrScalar(group, display_values, sample.text, text_control,
+            valueArrayLength, valueToScalar, sample.default_values,
+            inherited_values, sample.renderer);
+      }
+      return;
+    }
+
+    DisplayRealType[] targets = TerminalBatchA3D.TARGETS;
+    int nc = (index[TerminalBatchA3D.ALPHA] >= 0) ? 4 : 3;
+    String[] text_values = new String[n];
+    float[][] spatial_values = new float[3][n];
+    byte[][] color_values = new byte[nc][n];
+    for (int j = 0; j < n; j++) {
+      TextSample sample = (TextSample) AccumulationVector.elementAt(j);
+      text_values[j] = sample.text;
+      for (int k = 0; k < 3 + nc; k++) {
+        float v = (index[k] >= 0) ? sample.value_array[index[k]] : Float.NaN;
+        if (v != v) {
+          v = sample.default_values[display.getDisplayScalarIndex(targets[k])];
+        }
+        if (k < 3) {
+          spatial_values[k][j] = v;
+        }
+        else {
+          v = Math.max(0f, Math.min(1f, (v == v) ? v : 1f));
+          color_values[k - 3][j] = (byte) Math.round(255f * v);
+        }
+      }
+    }
+
+    VisADGeometryArray array = makeText(text_values, text_control,
+        spatial_values, color_values, null);
+    addTextToGroup(group, array, getLink().getGraphicsModeControl(), 1.0f, null);
+  }
+
+  /** one Text sample of a terminal LEGAL transform */
+  private static class TextSample {
+    final String text;
+    final float[] value_array;
+    final float[] default_values;
+    final DataRenderer renderer;
+
+    TextSample(String text, float[] value_array, float[] default_values,
+               DataRenderer renderer) {
+      this.text = text;
+      this.value_array = value_array;
+      this.default_values = default_values;
+      this.renderer = renderer;
+    }
+  }
+
+}
@@ -83,6 +83,20 @@ public class ShadowTupleTypeA3D extends ShadowTypeA3D {
   public boolean doTransform(Object group, Data data, float[] value_array,
                              float[] default_values, DataRenderer renderer)
          throws VisADException, RemoteException {
+    if (adaptedShadowType.getIsTerminal() &&
+        adaptedShadowType.getLevelOfDifficulty() == LEGAL &&
+        TerminalBatchA3D.isDeferred() &&
+        (data == null || data.isMissing() || TerminalBatchA3D.isBatchable(data))) {
+      // collect the samples, postProcess draws them together
+      if (data != null && !data.isMissing()) {
+        TerminalBatchA3D.Sample sample = TerminalBatchA3D.makeSample(data,
+            value_array, default_values, renderer);
+        if (sample != null) {
+          AccumulationVector.addElement(sample);
+        }
+      }
+      return true;
+    }
     boolean post = ((ShadowTupleType) adaptedShadowType).
                         doTransform(group, data, value_array,
                                     default_values, renderer, this);
@@ -102,14 +116,19 @@ public class ShadowTupleTypeA3D extends ShadowTypeA3D {
     if (adaptedShadowType.getIsTerminal()) {
       int LevelOfDifficulty = adaptedShadowType.getLevelOfDifficulty();
       if (LevelOfDifficulty == LEGAL) {
-        throw new UnimplementedException("terminal LEGAL unimplemented: " +
-                                         "ShadowTupleTypeJ3D.postProcess");
+        try {
+          TerminalBatchA3D.render(this, group, AccumulationVector);
+        }
+        catch (RemoteException e) {
+          throw new VisADException("ShadowTupleTypeA3D.postProcess: " + e);
+        }
       }
       else {
         // nothing to do
       }
     }
     else {
+      // nothing to do
     }
     AccumulationVector.removeAllElements();
   }
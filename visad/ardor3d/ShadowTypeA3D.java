@@ -31,11 +31,25 @@ import com.ardor3d.math.Transform;
 import com.ardor3d.math.Vector3;
 import com.ardor3d.renderer.state.MaterialState;
 import com.ardor3d.renderer.state.OffsetState;
+import com.ardor3d.scenegraph.Mesh;
 import com.ardor3d.scenegraph.Node;
 import com.ardor3d.scenegraph.Spatial;
+import com.ardor3d.scenegraph.hint.LightCombineMode;
+import com.ardor3d.util.GameTaskQueue;
 import visad.*;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 import java.rmi.*;
 
@@ -912,9 +926,236 @@ public abstract class ShadowTypeA3D extends ShadowType {
       int spatialManifoldDimension, byte[][] color_values,
       boolean[][] range_select, int valueArrayLength, int[] valueToMap,
       Vector MapVector) throws VisADException {
-    return adaptedShadowType.makeStreamline(which, flow_values, flowScale,
-        spatial_values, spatial_set, spatialManifoldDimension, color_values,
-        range_select, valueArrayLength, valueToMap, MapVector);
+    DataRenderer renderer = (Link != null) ? Link.getRenderer() : null;
+    int tiles = 0;
+    int budget = 0;
+    if (renderer instanceof DefaultRendererA3D) {
+      tiles = ((DefaultRendererA3D) renderer).getStreamlineTiles();
+      budget = ((DefaultRendererA3D) renderer).getStreamlineVertexBudget();
+    }
+    if (tiles > 1 && spatialManifoldDimension == 2 && spatial_values != null &&
+        isTileable(spatial_set, spatial_values[0].length)) {
+      return makeStreamlineTiled(tiles, budget, which, flow_values, flowScale,
+          spatial_values, spatial_set, spatialManifoldDimension, color_values,
+          range_select, valueArrayLength, valueToMap, MapVector);
+    }
+    VisADGeometryArray[] arrays = adaptedShadowType.makeStreamline(which,
+        flow_values, flowScale, spatial_values, spatial_set,
+        spatialManifoldDimension, color_values, range_select, valueArrayLength,
+        valueToMap, MapVector);
+    if (budget > 0 && arrays != null) {
+      arrays = limitVertices(arrays, new int[] {budget});
+    }
+    return arrays;
+  }
+
+  /**
+   * Trace streamlines over a 2D grid as bands of rows, concurrently, each
+   * band with its own copies of the values.  Bands are collected in row
+   * order and the vertex budget is spent in that order, so the result
+   * does not depend on which band finished first; bands after the budget
+   * is spent are cancelled.
+   */
+  private VisADGeometryArray[] makeStreamlineTiled(int tiles, int budget,
+      final int which, float[][] flow_values, final float flowScale,
+      float[][] spatial_values, Set spatial_set,
+      final int spatialManifoldDimension, byte[][] color_values,
+      boolean[][] range_select, final int valueArrayLength,
+      final int[] valueToMap, final Vector MapVector) throws VisADException {
+    int[] lengths = ((GriddedSet) spatial_set).getLengths();
+    int nx = lengths[0];
+    int ny = lengths[1];
+    int domain_length = nx * ny;
+    tiles = Math.min(tiles, (ny - 1) / MIN_TILE_ROWS);
+
+    List<Future<VisADGeometryArray[]>> futures =
+        new ArrayList<Future<VisADGeometryArray[]>>();
+    for (int t = 0; t < tiles; t++) {
+      int r0 = (int) ((long) (ny - 1) * t / tiles);
+      int r1 = (int) ((long) (ny - 1) * (t + 1) / tiles);
+      int i0 = r0 * nx;
+      int n = (r1 - r0 + 1) * nx;
+
+      final float[][] sub_flow = subRows(flow_values, domain_length, i0, n);
+      final float[][] sub_spatial_values = subRows(spatial_values, domain_length, i0, n);
+      final byte[][] sub_colors = subRows(color_values, domain_length, i0, n);
+      final boolean[][] sub_select = subRows(range_select, domain_length, i0, n);
+      final Set sub_spatial = subGrid((GriddedSet) spatial_set, nx, r0, r1);
+
+      futures.add(getTilePool().submit(new Callable<VisADGeometryArray[]>() {
+        public VisADGeometryArray[] call() throws VisADException {
+          return adaptedShadowType.makeStreamline(which, sub_flow, flowScale,
+              sub_spatial_values, sub_spatial, spatialManifoldDimension,
+              sub_colors, sub_select, valueArrayLength, valueToMap, MapVector);
+        }
+      }));
+    }
+
+    List<VisADGeometryArray> parts = new ArrayList<VisADGeometryArray>();
+    int[] remaining = new int[] {(budget > 0) ? budget : Integer.MAX_VALUE};
+    VisADException error = null;
+    for (int t = 0; t < tiles; t++) {
+      if (error != null || remaining[0] <= 0) {
+        futures.get(t).cancel(false);
+        continue;
+      }
+      try {
+        VisADGeometryArray[] band = futures.get(t).get();
+        if (band != null) {
+          for (VisADGeometryArray array : limitVertices(band, remaining)) {
+            if (array != null) parts.add(array);
+          }
+        }
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        error = new VisADException("streamline tracing interrupted");
+      }
+      catch (ExecutionException e) {
+        Throwable cause = e.getCause();
+        error = (cause instanceof VisADException) ? (VisADException) cause :
+            new VisADException("streamline tracing failed: " + cause);
+      }
+    }
+    if (error != null) {
+      throw error;
+    }
+    return mergeArrays(parts);
+  }
+
+  /** vertices per primitive of array, or 0 if it is not made of separate primitives */
+  private static int verticesPerPrimitive(VisADGeometryArray array) {
+    if (array instanceof VisADLineArray) return 2;
+    if (array instanceof VisADTriangleArray) return 3;
+    if (array instanceof VisADPointArray) return 1;
+    return 0;
+  }
+
+  /**
+   * Keep whole primitives of arrays, in order, until remaining[0]
+   * vertices are spent; arrays past the budget are dropped.
+   */
+  private static VisADGeometryArray[] limitVertices(VisADGeometryArray[] arrays,
+                                                    int[] remaining) {
+    List<VisADGeometryArray> kept = new ArrayList<VisADGeometryArray>();
+    for (VisADGeometryArray array : arrays) {
+      if (array == null) continue;
+      if (array.vertexCount <= remaining[0]) {
+        remaining[0] -= array.vertexCount;
+        kept.add(array);
+        continue;
+      }
+      int per = verticesPerPrimitive(array);
+      int keep = (per > 0) ? remaining[0] - remaining[0] % per : 0;
+      remaining[0] = 0;
+      if (keep > 0) {
+        kept.add(truncate(array, keep));
+      }
+    }
+    return kept.toArray(new VisADGeometryArray[kept.size()]);
+  }
+
+  /** a copy of the first n vertices of array */
+  private static VisADGeometryArray truncate(VisADGeometryArray array, int n) {
+    VisADGeometryArray sub = (VisADGeometryArray) array.clone();
+    int count = array.vertexCount;
+    sub.vertexCount = n;
+    if (array.coordinates != null) {
+      sub.coordinates = Arrays.copyOf(array.coordinates, array.coordinates.length / count * n);
+    }
+    if (array.normals != null) {
+      sub.normals = Arrays.copyOf(array.normals, array.normals.length / count * n);
+    }
+    if (array.texCoords != null) {
+      sub.texCoords = Arrays.copyOf(array.texCoords, array.texCoords.length / count * n);
+    }
+    if (array.colors != null) {
+      sub.colors = Arrays.copyOf(array.colors, array.colors.length / count * n);
+    }
+    return sub;
+  }
+
+  /**
+   * Join line, triangle and point arrays of the same kind and layout into
+   * one, in order; other arrays are returned as they are.
+   */
+  static VisADGeometryArray[] mergeArrays(List<VisADGeometryArray> parts) {
+    List<VisADGeometryArray> merged = new ArrayList<VisADGeometryArray>();
+    boolean[] used = new boolean[parts.size()];
+    for (int i = 0; i < parts.size(); i++) {
+      if (used[i]) continue;
+      VisADGeometryArray first = parts.get(i);
+      used[i] = true;
+      Class<?> kind = first.getClass();
+      if (verticesPerPrimitive(first) == 0 ||
+          (kind != VisADLineArray.class && kind != VisADTriangleArray.class &&
+           kind != VisADPointArray.class)) {
+        merged.add(first);
+        continue;
+      }
+      List<VisADGeometryArray> same = new ArrayList<VisADGeometryArray>();
+      same.add(first);
+      for (int j = i + 1; j < parts.size(); j++) {
+        VisADGeometryArray a = parts.get(j);
+        if (!used[j] && a.getClass() == kind && sameLayout(first, a)) {
+          same.add(a);
+          used[j] = true;
+        }
+      }
+      merged.add((same.size() == 1) ? first : concatenate(same));
+    }
+    return merged.toArray(new VisADGeometryArray[merged.size()]);
+  }
+
+  private static boolean sameLayout(VisADGeometryArray a, VisADGeometryArray b) {
+    return perVertex(a.coordinates, a) == perVertex(b.coordinates, b) &&
+           perVertex(a.normals, a) == perVertex(b.normals, b) &&
+           perVertex(a.texCoords, a) == perVertex(b.texCoords, b) &&
+           ((a.colors == null) ? -1 : a.colors.length / Math.max(1, a.vertexCount)) ==
+           ((b.colors == null) ? -1 : b.colors.length / Math.max(1, b.vertexCount));
+  }
+
+  private static int perVertex(float[] values, VisADGeometryArray array) {
+    return (values == null) ? -1 : values.length / Math.max(1, array.vertexCount);
+  }
+
+  private static VisADGeometryArray concatenate(List<VisADGeometryArray> arrays) {
+    VisADGeometryArray first = arrays.get(0);
+    VisADGeometryArray all = (VisADGeometryArray) first.clone();
+    int n = 0;
+    int nc = 0, nn = 0, nt = 0, ncol = 0;
+    for (VisADGeometryArray a : arrays) {
+      n += a.vertexCount;
+      if (a.coordinates != null) nc += a.coordinates.length;
+      if (a.normals != null) nn += a.normals.length;
+      if (a.texCoords != null) nt += a.texCoords.length;
+      if (a.colors != null) ncol += a.colors.length;
+    }
+    all.vertexCount = n;
+    all.coordinates = (first.coordinates != null) ? new float[nc] : null;
+    all.normals = (first.normals != null) ? new float[nn] : null;
+    all.texCoords = (first.texCoords != null) ? new float[nt] : null;
+    all.colors = (first.colors != null) ? new byte[ncol] : null;
+    nc = nn = nt = ncol = 0;
+    for (VisADGeometryArray a : arrays) {
+      if (a.coordinates != null) {
+        System.arraycopy(a.coordinates, 0, all.coordinates, nc, a.coordinates.length);
+        nc += a.coordinates.length;
+      }
+      if (a.normals != null) {
+        System.arraycopy(a.normals, 0, all.normals, nn, a.normals.length);
+        nn += a.normals.length;
+      }
+      if (a.texCoords != null) {
+        System.arraycopy(a.texCoords, 0, all.texCoords, nt, a.texCoords.length);
+        nt += a.texCoords.length;
+      }
+      if (a.colors != null) {
+        System.arraycopy(a.colors, 0, all.colors, ncol, a.colors.length);
+        ncol += a.colors.length;
+      }
+    }
+    return all;
   }
 
   /**
@@ -958,12 +1199,321 @@ public abstract class ShadowTypeA3D extends ShadowType {
       ShadowRealTupleType Domain, ShadowRealType[] DomainReferenceComponents,
       Set domain_set, Unit[] domain_units, CoordinateSystem dataCoordinateSystem)
       throws VisADException {
-    return adaptedShadowType.makeContour(valueArrayLength, valueToScalar,
-        display_values, inherited_values, MapVector, valueToMap, domain_length,
-        range_select, spatialManifoldDimension, spatial_set, color_values,
-        indexed, group, mode, swap, constant_alpha, constant_color, shadow_api,
-        Domain, DomainReferenceComponents, domain_set, domain_units,
-        dataCoordinateSystem);
+    ContourCacheA3D.Recording recording = null;
+    ContourCacheA3D.Key key = null;
+    if (group instanceof Node && ContourCacheA3D.isEnabled()) {
+      key = ContourCacheA3D.makeKey(valueArrayLength, valueToScalar,
+          display_values, inherited_values, MapVector, valueToMap, domain_length,
+          range_select, spatialManifoldDimension, spatial_set, color_values,
+          indexed, mode, swap, constant_alpha, constant_color, domain_set,
+          display.getProjectionControl());
+    }
+    if (key != null) {
+      List<ContourControl> controls = ContourCacheA3D.getContourControls(MapVector);
+      ContourCacheA3D.Entry entry = ContourCacheA3D.get(key);
+      if (entry != null) {
+        ShadowTypeA3D shadow = (shadow_api instanceof ShadowTypeA3D) ?
+            (ShadowTypeA3D) shadow_api : this;
+        entry.replay(shadow, group, mode, controls, display.getProjectionControl());
+        return entry.result;
+      }
+      recording = new ContourCacheA3D.Recording(group, mode, controls);
+    }
+    ContourCacheA3D.Recording previous = recordings.get();
+    if (recording != null) {
+      recordings.set(recording);
+    }
+
+    int before = (recording != null) ? ((Node) group).getNumberOfChildren() : 0;
+    boolean result;
+    try {
+      DataRenderer renderer = (Link != null) ? Link.getRenderer() : null;
+      int tiles = (renderer instanceof DefaultRendererA3D) ?
+          ((DefaultRendererA3D) renderer).getContourTiles() : 0;
+      if (tiles > 1 && group instanceof Node && spatialManifoldDimension == 2 &&
+          isTileable(spatial_set, domain_length) &&
+          (domain_set == null || isTileable(domain_set, domain_length))) {
+        result = makeContourTiled(tiles, valueArrayLength, valueToScalar,
+            display_values, inherited_values, MapVector, valueToMap, domain_length,
+            range_select, spatialManifoldDimension, spatial_set, color_values,
+            indexed, (Node) group, mode, swap, constant_alpha, constant_color,
+            shadow_api, Domain, DomainReferenceComponents, domain_set,
+            domain_units, dataCoordinateSystem);
+      }
+      else {
+        result = adaptedShadowType.makeContour(valueArrayLength, valueToScalar,
+            display_values, inherited_values, MapVector, valueToMap, domain_length,
+            range_select, spatialManifoldDimension, spatial_set, color_values,
+            indexed, group, mode, swap, constant_alpha, constant_color, shadow_api,
+            Domain, DomainReferenceComponents, domain_set, domain_units,
+            dataCoordinateSystem);
+      }
+    }
+    finally {
+      if (recording != null) {
+        setRecording(previous);
+      }
+    }
+
+    // only cache if everything added to group came through the recorded calls
+    if (recording != null &&
+        ((Node) group).getNumberOfChildren() - before == recording.attached) {
+      ContourCacheA3D.put(key, recording, result);
+    }
+    return result;
+  }
+
+  /** the group this thread is contouring for ContourCacheA3D, if any;
+      contouring calls addToGroup on the thread that called makeContour */
+  private static final ThreadLocal<ContourCacheA3D.Recording> recordings =
+      new ThreadLocal<ContourCacheA3D.Recording>();
+
+  private static ContourCacheA3D.Recording getRecording(Object group) {
+    ContourCacheA3D.Recording recording = recordings.get();
+    return (recording != null && recording.group == group) ? recording : null;
+  }
+
+  private static void setRecording(ContourCacheA3D.Recording recording) {
+    if (recording == null) {
+      recordings.remove();
+    }
+    else {
+      recordings.set(recording);
+    }
+  }
+
+  /**
+     One band of a tiled makeContour, for the thread contouring it: the
+     label listeners shared by all bands of the call (guarded by MUTEX),
+     the grid row shared with the band before it in display coordinates
+     (null for the first band), the anchors of the labels added, and the
+     labels near that row held until the band before it is done.
+  */
+  private static final class TileBand {
+    final Object band;
+    final float[][] row;
+    final Map<ContourControl, ProjectionControlListener> listeners;
+    final List<float[]> anchors = new ArrayList<float[]>();
+    final List<HeldLabels> held = new ArrayList<HeldLabels>();
+    boolean resolving = false;
+
+    TileBand(Object band, float[][] row,
+             Map<ContourControl, ProjectionControlListener> listeners) {
+      this.band = band;
+      this.row = row;
+      this.listeners = listeners;
+    }
+  }
+
+  /** the arguments of an addLabelsToGroup call whose labels are held */
+  private static final class HeldLabels {
+    final List<ContourLabelGeometry> arrays = new ArrayList<ContourLabelGeometry>();
+    GraphicsModeControl mode;
+    ContourControl control;
+    ProjectionControl p_cntrl;
+    float constant_alpha;
+    float[] constant_color;
+  }
+
+  private static final ThreadLocal<TileBand> tileBands = new ThreadLocal<TileBand>();
+
+  /** smallest number of grid rows in one contouring tile */
+  private static final int MIN_TILE_ROWS = 32;
+
+  /** shared by all displays; contouring and streamline tasks never wait
+      on each other */
+  private static ExecutorService tilePool = null;
+
+  private static synchronized ExecutorService getTilePool() {
+    if (tilePool == null) {
+      tilePool = Executors.newFixedThreadPool(
+          Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+              Thread t = new Thread(r, "grid tile");
+              t.setDaemon(true);
+              return t;
+            }
+          });
+    }
+    return tilePool;
+  }
+
+  /** true if set is a 2D grid over domain_length samples, with enough rows to split */
+  private static boolean isTileable(Set set, int domain_length) {
+    if (!(set instanceof GriddedSet) || set.getManifoldDimension() != 2) {
+      return false;
+    }
+    int[] lengths = ((GriddedSet) set).getLengths();
+    return lengths.length == 2 && lengths[0] * lengths[1] == domain_length &&
+           lengths[1] >= 2 * MIN_TILE_ROWS;
+  }
+
+  /**
+   * Contour a 2D grid as bands of rows, concurrently. Adjacent bands share
+   * their boundary row so contour lines and fills meet. Each band is built
+   * under its own Node; the bands are then attached to group in row order,
+   * so the result does not depend on which band finished first. All bands
+   * share one ProjectionControlListener per ContourControl.  A band holds
+   * its labels within one label length of the row it shares with the
+   * band before it; once all bands are done, a held label is dropped if
+   * the band before it has a label within one label length, else added.
+   */
+  private boolean makeContourTiled(int tiles, final int valueArrayLength,
+      final int[] valueToScalar, float[][] display_values,
+      final int[] inherited_values, final Vector MapVector, final int[] valueToMap,
+      int domain_length, boolean[][] range_select,
+      final int spatialManifoldDimension, Set spatial_set, byte[][] color_values,
+      final boolean indexed, Node group, final GraphicsModeControl mode,
+      final boolean[] swap, final float constant_alpha, final float[] constant_color,
+      final ShadowType shadow_api, final ShadowRealTupleType Domain,
+      final ShadowRealType[] DomainReferenceComponents, Set domain_set,
+      final Unit[] domain_units, final CoordinateSystem dataCoordinateSystem)
+      throws VisADException {
+    int[] lengths = ((GriddedSet) spatial_set).getLengths();
+    int nx = lengths[0];
+    int ny = lengths[1];
+    tiles = Math.min(tiles, (ny - 1) / MIN_TILE_ROWS);
+
+    List<Future<Boolean>> futures = new ArrayList<Future<Boolean>>();
+    final Node[] bands = new Node[tiles];
+    ContourCacheA3D.Recording parent = getRecording(group);
+    ContourCacheA3D.Recording[] bandRecordings = new ContourCacheA3D.Recording[tiles];
+    float[][] samples = ((GriddedSet) spatial_set).getSamples(false);
+    Map<ContourControl, ProjectionControlListener> listeners =
+        new HashMap<ContourControl, ProjectionControlListener>();
+    TileBand[] tileBand = new TileBand[tiles];
+    for (int t = 0; t < tiles; t++) {
+      int r0 = (int) ((long) (ny - 1) * t / tiles);
+      int r1 = (int) ((long) (ny - 1) * (t + 1) / tiles);
+      int i0 = r0 * nx;
+      int n = (r1 - r0 + 1) * nx;
+
+      final float[][] sub_values = subRows(display_values, domain_length, i0, n);
+      final byte[][] sub_colors = subRows(color_values, domain_length, i0, n);
+      final boolean[][] sub_select = subRows(range_select, domain_length, i0, n);
+      final Set sub_spatial = subGrid((GriddedSet) spatial_set, nx, r0, r1);
+      final Set sub_domain = (domain_set == null) ? null :
+          subGrid((GriddedSet) domain_set, nx, r0, r1);
+      final int sub_length = n;
+      final Node band = new Node();
+      bands[t] = band;
+      if (parent != null) {
+        bandRecordings[t] =
+            new ContourCacheA3D.Recording(band, parent.mode, parent.controls);
+      }
+      final ContourCacheA3D.Recording bandRecording = bandRecordings[t];
+      final TileBand tb = new TileBand(band, (t == 0 || samples == null) ? null :
+          subRows(samples, domain_length, i0, nx), listeners);
+      tileBand[t] = tb;
+
+      futures.add(getTilePool().submit(new Callable<Boolean>() {
+        public Boolean call() throws VisADException {
+          setRecording(bandRecording);
+          tileBands.set(tb);
+          try {
+            return adaptedShadowType.makeContour(valueArrayLength, valueToScalar,
+                sub_values, inherited_values, MapVector, valueToMap, sub_length,
+                sub_select, spatialManifoldDimension, sub_spatial, sub_colors,
+                indexed, band, mode, swap, constant_alpha, constant_color,
+                shadow_api, Domain, DomainReferenceComponents, sub_domain,
+                domain_units, dataCoordinateSystem);
+          }
+          finally {
+            setRecording(null);
+            tileBands.remove();
+          }
+        }
+      }));
+    }
+
+    boolean any = false;
+    VisADException error = null;
+    for (int t = 0; t < tiles; t++) {
+      try {
+        if (futures.get(t).get().booleanValue()) {
+          any = true;
+        }
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        error = new VisADException("contouring interrupted");
+      }
+      catch (ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (error == null) {
+          error = (cause instanceof VisADException) ? (VisADException) cause :
+              new VisADException("contouring failed: " + cause);
+        }
+      }
+    }
+    if (error == null) {
+      for (int t = 1; t < tiles; t++) {
+        addHeldLabels(tileBand[t], tileBand[t - 1], bandRecordings[t]);
+      }
+    }
+    for (int t = 0; t < tiles; t++) {
+      if (bandRecordings[t] != null) {
+        parent.append(bandRecordings[t]);
+      }
+    }
+    if (error != null) {
+      throw error;
+    }
+
+    DisplayRendererA3D dspRenderer = (DisplayRendererA3D) display.getDisplayRenderer();
+    for (int t = 0; t < tiles; t++) {
+      while (bands[t].getNumberOfChildren() > 0) {
+        group.attachChild(bands[t].getChild(0));
+      }
+      if (dspRenderer.getScreenSpaceLabels()) {
+        dspRenderer.getLabelLayer().moveLabels(bands[t], group);
+      }
+    }
+    return any;
+  }
+
+  private static float[][] subRows(float[][] values, int length, int i0, int n) {
+    if (values == null) return null;
+    float[][] sub = new float[values.length][];
+    for (int i = 0; i < values.length; i++) {
+      sub[i] = (values[i] != null && values[i].length == length) ?
+          Arrays.copyOfRange(values[i], i0, i0 + n) : values[i];
+    }
+    return sub;
+  }
+
+  private static byte[][] subRows(byte[][] values, int length, int i0, int n) {
+    if (values == null) return null;
+    byte[][] sub = new byte[values.length][];
+    for (int i = 0; i < values.length; i++) {
+      sub[i] = (values[i] != null && values[i].length == length) ?
+          Arrays.copyOfRange(values[i], i0, i0 + n) : values[i];
+    }
+    return sub;
+  }
+
+  private static boolean[][] subRows(boolean[][] values, int length, int i0, int n) {
+    if (values == null) return null;
+    boolean[][] sub = new boolean[values.length][];
+    for (int i = 0; i < values.length; i++) {
+      sub[i] = (values[i] != null && values[i].length == length) ?
+          Arrays.copyOfRange(values[i], i0, i0 + n) : values[i];
+    }
+    return sub;
+  }
+
+  /** rows r0 through r1 of a 2D grid, as a grid of the same type */
+  private static GriddedSet subGrid(GriddedSet set, int nx, int r0, int r1)
+      throws VisADException {
+    float[][] samples = set.getSamples(false);
+    int i0 = r0 * nx;
+    int n = (r1 - r0 + 1) * nx;
+    float[][] sub = new float[samples.length][];
+    for (int i = 0; i < samples.length; i++) {
+      sub[i] = Arrays.copyOfRange(samples[i], i0, i0 + n);
+    }
+    return GriddedSet.create(set.getType(), sub, new int[] {nx, r1 - r0 + 1},
+        set.getCoordinateSystem(), set.getSetUnits(), null, false, false);
   }
 
   private Object MUTEX = new Object();
@@ -973,19 +1523,55 @@ public abstract class ShadowTypeA3D extends ShadowType {
       ProjectionControl p_cntrl, int[] cnt_a, float constant_alpha,
       float[] constant_color) throws VisADException {
 
+    TileBand tile = tileBands.get();
+    if (tile != null && tile.band != group) {
+      tile = null;
+    }
+    if (tile != null && arrays != null) {
+      if (!tile.resolving && tile.row != null) {
+        arrays = holdEdgeLabels(tile, arrays, mode, control, p_cntrl,
+                                constant_alpha, constant_color);
+      }
+      for (int i = 0; i < arrays.length; i++) {
+        float[] anchor = getAnchor((ContourLabelGeometry) arrays[i]);
+        if (anchor != null) tile.anchors.add(anchor);
+      }
+    }
+
+    ContourCacheA3D.Recording recording = getRecording(group);
+    if (recording != null) {
+      recording.addLabels(arrays, mode, control, constant_alpha, constant_color);
+    }
+
     synchronized(MUTEX) {
+       int before = ((com.ardor3d.scenegraph.Node) group).getNumberOfChildren();
        int cnt = cnt_a[0];
 
-       if (cnt == 0) {
-         projListener = new ProjectionControlListener(p_cntrl, control);
+       ProjectionControlListener listener;
+       if (tile != null) {
+         listener = tile.listeners.get(control);
+         if (listener == null) {
+           listener = new ProjectionControlListener(p_cntrl, control,
+               (DisplayRendererA3D) display.getDisplayRenderer());
+           tile.listeners.put(control, listener);
+         }
+       }
+       else {
+         if (cnt == 0) {
+           projListener = new ProjectionControlListener(p_cntrl, control,
+               (DisplayRendererA3D) display.getDisplayRenderer());
+         }
+         listener = projListener;
        }
 
        int n_labels = arrays.length;
 
+       DisplayRendererA3D dspRenderer = (DisplayRendererA3D) display.getDisplayRenderer();
+       LabelLayerA3D layer = (control.getAutoSizeLabels() && dspRenderer.getScreenSpaceLabels()) ?
+           dspRenderer.getLabelLayer() : null;
+
        // add the stretchy line segments if we are not filling
        if (!control.contourFilled() && arrays != null) {
-         projListener.LT_array[cnt] = new LabelTransform[3][n_labels];
-
          GraphicsModeControl styledMode = (GraphicsModeControl) mode.clone();
          styledMode.setLineStyle(control.getDashedStyle(), false);
 
@@ -997,15 +1583,13 @@ public abstract class ShadowTypeA3D extends ShadowType {
 
            if (control.getAutoSizeLabels()) {
 
-             LabelTransform lbl_trans = new LabelTransform(segL_trans_group, p_cntrl,
+             listener.add(new LabelTransform(segL_trans_group,
                  new VisADGeometryArray[] { array.expSegLeft, array.segLeftAnchor },
-                 array.segLeftScaleInfo, 1);
-             projListener.LT_array[cnt][1][ii] = lbl_trans;
+                 array.segLeftScaleInfo, 1));
 
-             lbl_trans = new LabelTransform(segR_trans_group, p_cntrl,
+             listener.add(new LabelTransform(segR_trans_group,
                  new VisADGeometryArray[] { array.expSegRight, array.segRightAnchor },
-                 array.segRightScaleInfo, 1);
-             projListener.LT_array[cnt][2][ii] = lbl_trans;
+                 array.segRightScaleInfo, 1));
            }
            ((com.ardor3d.scenegraph.Node) group).attachChild(segL_trans_group);
            ((com.ardor3d.scenegraph.Node) group).attachChild(segR_trans_group);
@@ -1024,21 +1608,23 @@ public abstract class ShadowTypeA3D extends ShadowType {
            }
          }
 
-       } else {
-         projListener.LT_array[cnt] = new LabelTransform[1][n_labels];
        }
 
        cnt = cnt_a[0];
 
        for (int ii = 0; ii < n_labels; ii++) {
-         TransformNode lbl_trans_group = new TransformNode();
-
          ContourLabelGeometry array = (ContourLabelGeometry) arrays[ii];
 
+         if (layer != null && layer.addLabel(group, array.label, array.labelAnchor,
+                                             mode, constant_alpha, constant_color)) {
+           continue;
+         }
+
+         TransformNode lbl_trans_group = new TransformNode();
+
          if (control.getAutoSizeLabels()) {
-           LabelTransform lbl_trans = new LabelTransform(lbl_trans_group, p_cntrl,
-               new VisADGeometryArray[] { array.label, array.labelAnchor }, null, 0);
-           projListener.LT_array[cnt][0][ii] = lbl_trans;
+           listener.add(new LabelTransform(lbl_trans_group,
+               new VisADGeometryArray[] { array.label, array.labelAnchor }, null, 0));
          }
 
          ((com.ardor3d.scenegraph.Node) group).attachChild(lbl_trans_group);
@@ -1047,12 +1633,214 @@ public abstract class ShadowTypeA3D extends ShadowType {
              constant_color);
        }
        cnt++;
-       projListener.cnt = cnt;
        cnt_a[0] = cnt;
+
+       if (recording != null) {
+         recording.addAttached(((com.ardor3d.scenegraph.Node) group).getNumberOfChildren() - before);
+       }
     }
   }
 
 
+  /**
+   * Return the labels of arrays whose anchors are farther than one label
+   * length from the row tile shares with the band before it, and hold
+   * the others in tile.
+   */
+  private static VisADGeometryArray[] holdEdgeLabels(TileBand tile,
+      VisADGeometryArray[] arrays, GraphicsModeControl mode,
+      ContourControl control, ProjectionControl p_cntrl,
+      float constant_alpha, float[] constant_color) {
+    List<VisADGeometryArray> kept = new ArrayList<VisADGeometryArray>();
+    HeldLabels held = null;
+    for (int i = 0; i < arrays.length; i++) {
+      ContourLabelGeometry array = (ContourLabelGeometry) arrays[i];
+      if (!nearRow(array, tile.row)) {
+        kept.add(array);
+        continue;
+      }
+      if (held == null) {
+        held = new HeldLabels();
+        held.mode = mode;
+        held.control = control;
+        held.p_cntrl = p_cntrl;
+        held.constant_alpha = constant_alpha;
+        held.constant_color = constant_color;
+        tile.held.add(held);
+      }
+      held.arrays.add(array);
+    }
+    return (held == null) ? arrays :
+        kept.toArray(new VisADGeometryArray[kept.size()]);
+  }
+
+  /**
+   * Add the labels held by band, except those within one label length
+   * of a label of the band before it, whose contour lines are added
+   * with their label gaps closed.  Runs on the thread that called
+   * makeContourTiled, once all bands are done.
+   */
+  private void addHeldLabels(TileBand band, TileBand before,
+      ContourCacheA3D.Recording recording) throws VisADException {
+    if (band.held.isEmpty()) return;
+    ContourCacheA3D.Recording previous = recordings.get();
+    setRecording(recording);
+    tileBands.set(band);
+    band.resolving = true;
+    try {
+      for (HeldLabels held : band.held) {
+        List<VisADGeometryArray> kept = new ArrayList<VisADGeometryArray>();
+        for (ContourLabelGeometry array : held.arrays) {
+          if (nearAnchor(array, before.anchors)) {
+            closeLabelGap(band.band, array, held.mode, held.control,
+                          held.constant_alpha, held.constant_color);
+          }
+          else {
+            kept.add(array);
+          }
+        }
+        if (!kept.isEmpty()) {
+          addLabelsToGroup(band.band,
+              kept.toArray(new VisADGeometryArray[kept.size()]), held.mode,
+              held.control, held.p_cntrl, new int[] {1}, held.constant_alpha,
+              held.constant_color);
+        }
+      }
+    }
+    finally {
+      band.resolving = false;
+      tileBands.remove();
+      setRecording(previous);
+    }
+  }
+
+  /** add the contour line of a dropped label to group, its gap closed */
+  private void closeLabelGap(Object group, ContourLabelGeometry array,
+      GraphicsModeControl mode, ContourControl control, float constant_alpha,
+      float[] constant_color) throws VisADException {
+    if (control.contourFilled()) return;
+    VisADLineArray line = closeLabelGap(array);
+    if (line == null) return;
+    GraphicsModeControl m = mode;
+    if (array.isStyled) {
+      m = (GraphicsModeControl) mode.clone();
+      m.setLineStyle(control.getDashedStyle(), false);
+    }
+    addToGroup(group, line, m, constant_alpha, constant_color);
+  }
+
+  /** the label's anchor, or null */
+  private static float[] getAnchor(ContourLabelGeometry array) {
+    return (array.labelAnchor == null || array.labelAnchor.coordinates == null ||
+            array.labelAnchor.coordinates.length < 3) ?
+        null : array.labelAnchor.coordinates;
+  }
+
+  /** square of the label's length, taking its anchor as its center, or
+      -1 if it has no geometry */
+  private static double getLength2(ContourLabelGeometry array) {
+    float[] a = getAnchor(array);
+    if (a == null || array.label == null || array.label.coordinates == null) {
+      return -1;
+    }
+    float[] c = array.label.coordinates;
+    double length = 0;
+    for (int k = 0; k + 2 < c.length; k += 3) {
+      double dx = c[k] - a[0];
+      double dy = c[k + 1] - a[1];
+      double dz = c[k + 2] - a[2];
+      length = Math.max(length, dx * dx + dy * dy + dz * dz);
+    }
+    return 4 * length;
+  }
+
+  /** true if the label's anchor is within the label's length of one of anchors */
+  private static boolean nearAnchor(ContourLabelGeometry array, List<float[]> anchors) {
+    double length = getLength2(array);
+    if (length < 0) return false;
+    float[] a = getAnchor(array);
+    for (float[] b : anchors) {
+      double dx = a[0] - b[0];
+      double dy = a[1] - b[1];
+      double dz = a[2] - b[2];
+      if (dx * dx + dy * dy + dz * dz <= length) return true;
+    }
+    return false;
+  }
+
+  /** true if the label's anchor is within the label's length of row */
+  private static boolean nearRow(ContourLabelGeometry array, float[][] row) {
+    double length = getLength2(array);
+    if (length < 0 || row.length < 3) return false;
+    float[] a = getAnchor(array);
+
+    int n = row[0].length;
+    for (int j = 0; j + 1 < n; j++) {
+      double x0 = row[0][j], y0 = row[1][j], z0 = row[2][j];
+      double ux = row[0][j + 1] - x0, uy = row[1][j + 1] - y0, uz = row[2][j + 1] - z0;
+      double wx = a[0] - x0, wy = a[1] - y0, wz = a[2] - z0;
+      double uu = ux * ux + uy * uy + uz * uz;
+      double f = (uu > 0) ? (wx * ux + wy * uy + wz * uz) / uu : 0;
+      f = Math.max(0, Math.min(1, f));
+      double dx = wx - f * ux, dy = wy - f * uy, dz = wz - f * uz;
+      if (dx * dx + dy * dy + dz * dz <= length) return true;
+    }
+    return false;
+  }
+
+  /**
+   * Join the contour line segments on either side of a label with a
+   * segment across the label's gap, between their closest end points.
+   */
+  private static VisADLineArray closeLabelGap(ContourLabelGeometry array) {
+    VisADGeometryArray left = array.expSegLeft;
+    VisADGeometryArray right = array.expSegRight;
+    if (left == null || right == null || left.vertexCount <= 0 ||
+        right.vertexCount <= 0) {
+      return null;
+    }
+    int nl = left.vertexCount;
+    int nr = right.vertexCount;
+    int li = 0, ri = 0;
+    double best = Double.MAX_VALUE;
+    int[] lends = {0, nl - 1};
+    int[] rends = {0, nr - 1};
+    for (int l : lends) {
+      for (int r : rends) {
+        double dx = left.coordinates[3 * l] - right.coordinates[3 * r];
+        double dy = left.coordinates[3 * l + 1] - right.coordinates[3 * r + 1];
+        double dz = left.coordinates[3 * l + 2] - right.coordinates[3 * r + 2];
+        double d = dx * dx + dy * dy + dz * dz;
+        if (d < best) {
+          best = d;
+          li = l;
+          ri = r;
+        }
+      }
+    }
+
+    int n = nl + 2 + nr;
+    VisADLineArray line = new VisADLineArray();
+    line.vertexCount = n;
+    line.coordinates = new float[3 * n];
+    System.arraycopy(left.coordinates, 0, line.coordinates, 0, 3 * nl);
+    System.arraycopy(left.coordinates, 3 * li, line.coordinates, 3 * nl, 3);
+    System.arraycopy(right.coordinates, 3 * ri, line.coordinates, 3 * nl + 3, 3);
+    System.arraycopy(right.coordinates, 0, line.coordinates, 3 * nl + 6, 3 * nr);
+
+    int cl = (left.colors == null) ? 0 : left.colors.length / nl;
+    int cr = (right.colors == null) ? 0 : right.colors.length / nr;
+    if (cl == cr && (cl == 3 || cl == 4)) {
+      int c = cl;
+      line.colors = new byte[c * n];
+      System.arraycopy(left.colors, 0, line.colors, 0, c * nl);
+      System.arraycopy(left.colors, c * li, line.colors, c * nl, c);
+      System.arraycopy(right.colors, c * ri, line.colors, c * (nl + 1), c);
+      System.arraycopy(right.colors, 0, line.colors, c * (nl + 2), c * nr);
+    }
+    return line;
+  }
+
   /**
    *
    *
@@ -1070,6 +1858,15 @@ public abstract class ShadowTypeA3D extends ShadowType {
   public VisADGeometryArray makeText(String[] text_values,
       TextControl text_control, float[][] spatial_values,
       byte[][] color_values, boolean[][] range_select) throws VisADException {
+    // one textured quad per character, from the shared glyph atlas,
+    // only if the display asks for it: atlas glyphs are bitmaps
+    if (((DisplayRendererA3D) display.getDisplayRenderer()).getGlyphAtlasText()) {
+      VisADGeometryArray array = GlyphAtlasA3D.makeText(text_values, text_control,
+          spatial_values, color_values, range_select);
+      if (array != null) {
+        return array;
+      }
+    }
     return adaptedShadowType.makeText(text_values, text_control,
         spatial_values, color_values, range_select);
   }
@@ -1179,6 +1976,11 @@ public abstract class ShadowTypeA3D extends ShadowType {
   public boolean addToGroup(Object group, VisADGeometryArray array,
       GraphicsModeControl mode, float constant_alpha, float[] constant_color)
       throws VisADException {
+
+    ContourCacheA3D.Recording recording = getRecording(group);
+    if (recording != null) {
+      recording.addGeometry(array, mode, constant_alpha, constant_color);
+    }
      
     if (array == null) {
        return false;
@@ -1211,7 +2013,22 @@ public abstract class ShadowTypeA3D extends ShadowType {
       defaultColor = new ColorRGBA(0, 0, 0, af);
     }
     
+    if (array instanceof GlyphAtlasA3D.TextArray) {
+      ((com.ardor3d.scenegraph.Node)group).attachChild(
+          GlyphAtlasA3D.makeMesh((GlyphAtlasA3D.TextArray) array));
+      if (recording != null) {
+        recording.addAttached(1);
+      }
+      return true;
+    }
+
     Spatial geometry = display.makeGeometry(array, defaultColor, mode);
+
+    // surfaces made without normals, e.g. 2-D barbs, cannot be lit
+    if (array.normals == null && !(array instanceof VisADLineArray ||
+        array instanceof VisADLineStripArray || array instanceof VisADPointArray)) {
+      geometry.getSceneHints().setLightCombineMode(LightCombineMode.Off);
+    }
        
     MaterialState material = new MaterialState();
     material.setColorMaterial(MaterialState.ColorMaterial.Diffuse);
@@ -1238,12 +2055,27 @@ public abstract class ShadowTypeA3D extends ShadowType {
     if (offState != null) {
        geometry.setRenderState(offState);
     }
+
+    FlowThinningA3D.Levels levels = null;
+    if (array instanceof FlowThinningA3D.LineArray) {
+      levels = ((FlowThinningA3D.LineArray) array).levels;
+    }
+    else if (array instanceof FlowThinningA3D.TriangleArray) {
+      levels = ((FlowThinningA3D.TriangleArray) array).levels;
+    }
+    if (levels != null && geometry instanceof Mesh) {
+      ((DisplayRendererA3D) display.getDisplayRenderer()).getFlowThinning().register(
+          (Mesh) geometry, levels);
+    }
       
 //      Leave here for reference for now.      
 //      Appearance appearance = makeCachedAppearance(mode, c_alpha, c_color, geometry, false, true);
 //      addToShape((Group) group, geometry, appearance);
 
     ((com.ardor3d.scenegraph.Node)group).attachChild(geometry);
+    if (recording != null) {
+      recording.addAttached(1);
+    }
 
     return true;
   }
@@ -1362,12 +2194,22 @@ public abstract class ShadowTypeA3D extends ShadowType {
 }
 
 /**
- * Class ProjectionControlListener
+ * Class ProjectionControlListener rescales the contour labels of one
+ * renderer when the display is zoomed. Labels are kept in a growable
+ * registry; the rescale for a zoom is applied to all of them in a single
+ * UPDATE queue task, and zoom events arriving before that task runs only
+ * update the scale it will apply.
  */
 class ProjectionControlListener implements ControlListener {
 
+  /** shared cache of the last matrix passed to unmake_matrix */
+  private static double[] cached_matrix = null;
+
+  /**  */
+  private static double cached_scale;
+
   /**  */
-  LabelTransform[][][] LT_array = null;
+  private final ArrayList<LabelTransform> labels = new ArrayList<LabelTransform>();
 
   /**  */
   ProjectionControl p_cntrl = null;
@@ -1375,6 +2217,9 @@ class ProjectionControlListener implements ControlListener {
   /**  */
   ContourControl c_cntrl = null;
 
+  /**  */
+  DisplayRendererA3D dspRenderer = null;
+
   /**  */
   double last_scale;
 
@@ -1382,31 +2227,51 @@ class ProjectionControlListener implements ControlListener {
   double first_scale;
 
   /**  */
-  int cnt = 0;
+  double last_time;
+
+  /** scale for the queued rescale task */
+  private double pending_scale;
 
   /**  */
-  double last_time;
+  private boolean rescale_queued = false;
 
   /**
    *
    *
    */
-  ProjectionControlListener(ProjectionControl p_cntrl, ContourControl c_cntrl) {
+  ProjectionControlListener(ProjectionControl p_cntrl, ContourControl c_cntrl,
+                            DisplayRendererA3D dspRenderer) {
     this.p_cntrl = p_cntrl;
     this.c_cntrl = c_cntrl;
-    double[] matrix = p_cntrl.getMatrix();
-    double[] rot_a = new double[3];
-    double[] trans_a = new double[3];
-    double[] scale_a = new double[1];
-    MouseBehaviorA3D.unmake_matrix(rot_a, scale_a, trans_a, matrix);
-    last_scale = scale_a[0];
+    this.dspRenderer = dspRenderer;
+    last_scale = getScale(p_cntrl.getMatrix());
     first_scale = last_scale;
-    LT_array = new LabelTransform[1000][][];
     last_time = System.currentTimeMillis();
     p_cntrl.addControlListener(this);
     c_cntrl.addProjectionControlListener(this, p_cntrl);
   }
 
+  /**
+   * Return the scale of a projection matrix, reusing the previous
+   * unmake_matrix result when the matrix has not changed.
+   */
+  static synchronized double getScale(double[] matrix) {
+    if (cached_matrix == null || !Arrays.equals(matrix, cached_matrix)) {
+      double[] rot_a = new double[3];
+      double[] trans_a = new double[3];
+      double[] scale_a = new double[1];
+      MouseBehaviorA3D.unmake_matrix(rot_a, scale_a, trans_a, matrix);
+      cached_matrix = (double[]) matrix.clone();
+      cached_scale = scale_a[0];
+    }
+    return cached_scale;
+  }
+
+  /** register a label, or expanding segment, to rescale on zoom */
+  synchronized void add(LabelTransform label) {
+    labels.add(label);
+  }
+
   /**
    *
    *
@@ -1417,47 +2282,47 @@ class ProjectionControlListener implements ControlListener {
    */
   public synchronized void controlChanged(ControlEvent e)
       throws VisADException, RemoteException {
-    double[] matrix = p_cntrl.getMatrix();
-    double[] rot_a = new double[3];
-    double[] trans_a = new double[3];
-    double[] scale_a = new double[1];
-
-    MouseBehaviorA3D.unmake_matrix(rot_a, scale_a, trans_a, matrix);
+    double scale = getScale(p_cntrl.getMatrix());
 
     // - identify scale change events.
-    if (!visad.util.Util.isApproximatelyEqual(scale_a[0], last_scale)) {
+    if (!visad.util.Util.isApproximatelyEqual(scale, last_scale)) {
       double current_time = System.currentTimeMillis();
-      if (scale_a[0] / last_scale > 1.15 || scale_a[0] / last_scale < 1 / 1.15) {
-        // BMF 2006-10-11 added loop for iterating controlChanged(...) calls to
-        // avoid null pointer exceptions
-        if (current_time - last_time < 3000) {
-          if (LT_array != null) {
-            for (int ii = 0; ii < cnt; ii++) {
-              for (int kk = 0; kk < LT_array[ii][0].length; kk++) {
-                for (int jj = 0; jj < LT_array[0].length; jj++)
-                  if (LT_array[ii][jj][kk] != null)
-                    LT_array[ii][jj][kk].controlChanged(first_scale, scale_a);
-              }
-            }
-          }
-        } else {
-          if (LT_array != null) {
-            for (int ii = 0; ii < cnt; ii++) {
-              for (int kk = 0; kk < LT_array[ii][0].length; kk++) {
-                for (int jj = 0; jj < LT_array[0].length; jj++) {
-                  if (LT_array[ii][jj][kk] != null)
-                    LT_array[ii][jj][kk].controlChanged(first_scale, scale_a);
-                }
-              }
-            }
-          }
+      if (scale / last_scale > 1.15 || scale / last_scale < 1 / 1.15) {
+        queueRescale(scale);
+        if (current_time - last_time >= 3000) {
           c_cntrl.reLabel();
         }
-        last_scale = scale_a[0];
+        last_scale = scale;
       }
       last_time = current_time;
     }
   }
+
+  /** rescale all labels from the UPDATE queue; zooms arriving before the
+      queued task runs are folded into it */
+  private void queueRescale(double scale) {
+    pending_scale = scale;
+    if (rescale_queued) return;
+    rescale_queued = true;
+
+    Callable updateCallable = new Callable() {
+      public Object call() {
+        LabelTransform[] lts;
+        double[] scale_a = new double[1];
+        synchronized (ProjectionControlListener.this) {
+          rescale_queued = false;
+          scale_a[0] = pending_scale;
+          lts = labels.toArray(new LabelTransform[labels.size()]);
+        }
+        for (int ii = 0; ii < lts.length; ii++) {
+          lts[ii].controlChanged(first_scale, scale_a);
+        }
+        return null;
+      }
+    };
+    GameTaskQueue uQueue = dspRenderer.getTaskQueueManager().getQueue(GameTaskQueue.UPDATE);
+    uQueue.enqueue(updateCallable);
+  }
 }
 
 /**
@@ -1468,42 +2333,15 @@ class LabelTransform {
   /**  */
   TransformNode trans;
 
-  /**  */
-  Transform t3d;
-
-  /**  */
-  ProjectionControl proj;
-
   /**  */
   VisADGeometryArray label_array;
 
   /**  */
   VisADGeometryArray anchr_array;
 
-  /**  */
-  double[] matrix;
-
-  /**  */
-  double last_scale;
-
-  /**  */
-  double first_scale;
-
-  /**  */
-  float[] vertex;
-
   /**  */
   float[] anchr_vertex;
 
-  /**  */
-  double[] rot_a;
-
-  /**  */
-  double[] trans_a;
-
-  /**  */
-  double[] scale_a;
-
   /**  */
   int flag;
 
@@ -1514,32 +2352,19 @@ class LabelTransform {
    *
    *
    * @param trans
-   * @param proj
    * @param label_array
    * @param f_array
    * @param flag
    */
-  LabelTransform(TransformNode trans, ProjectionControl proj,
-      VisADGeometryArray[] label_array, float[] f_array, int flag) {
+  LabelTransform(TransformNode trans, VisADGeometryArray[] label_array,
+      float[] f_array, int flag) {
     this.trans = trans;
-    this.proj = proj;
     this.label_array = label_array[0];
     this.anchr_array = label_array[1];
     this.flag = flag;
     this.f_array = f_array;
 
-    t3d = new Transform();
-    matrix = proj.getMatrix();
-    rot_a = new double[3];
-    trans_a = new double[3];
-    scale_a = new double[1];
-    MouseBehaviorA3D.unmake_matrix(rot_a, scale_a, trans_a, matrix);
-    last_scale = scale_a[0];
-    first_scale = last_scale;
-
-    vertex = this.label_array.coordinates;
     anchr_vertex = this.anchr_array.coordinates;
-    int vertexCount = this.label_array.vertexCount;
   }
 
   /**
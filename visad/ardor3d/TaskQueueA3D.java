@@ -0,0 +1,160 @@
+package visad.ardor3d;
+
+import com.ardor3d.renderer.Renderer;
+import com.ardor3d.util.GameTask;
+import com.ardor3d.util.GameTaskQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * GameTaskQueue for a DisplayRendererA3D. Enqueueing a task marks the
+ * display as needing a draw, and so does running tasks, since their
+ * scene graph changes show up in the following frame.
+ *
+ * Tasks run in the order they were enqueued. With a frame budget, execute
+ * stops once the budget is spent and leaves the remaining tasks for the
+ * next frame. A budget can delay tasks but never reorders them, so each
+ * renderer's tasks keep their order. At least one task runs per frame.
+ */
+public class TaskQueueA3D extends GameTaskQueue {
+
+   private final ConcurrentLinkedQueue<GameTask<?>> tasks = new ConcurrentLinkedQueue<GameTask<?>>();
+   private final AtomicInteger depth = new AtomicInteger();
+
+   private final DisplayRendererA3D dspRenderer;
+
+   private volatile long budgetNanos = 0;
+
+   // statistics, written only by the rendering thread
+   private volatile int maxDepth = 0;
+   private volatile long executedCount = 0;
+   private volatile long executeNanos = 0;
+   private volatile long maxFrameNanos = 0;
+   private volatile long frameCount = 0;
+   private volatile long deferredFrameCount = 0;
+
+   public TaskQueueA3D(DisplayRendererA3D dspRenderer) {
+      this.dspRenderer = dspRenderer;
+   }
+
+   @Override
+   public <V> Future<V> enqueue(final Callable<V> callable) {
+      final GameTask<V> task = new GameTask<V>(callable);
+      tasks.add(task);
+      depth.incrementAndGet();
+      dspRenderer.markNeedDraw();
+      return task;
+   }
+
+   public void execute() {
+      execute(null);
+   }
+
+   @Override
+   public void execute(final Renderer renderer) {
+      int n = depth.get();
+      if (n == 0) {
+         return;
+      }
+      if (n > maxDepth) {
+         maxDepth = n;
+      }
+
+      long start = System.nanoTime();
+      long budget = budgetNanos;
+      long now = start;
+      int ran = 0;
+      GameTask<?> task;
+      while ((task = tasks.poll()) != null) {
+         depth.decrementAndGet();
+         if (!task.isCancelled()) {
+            task.invoke();
+            ran++;
+         }
+         now = System.nanoTime();
+         if (budget > 0 && now - start >= budget) {
+            break;
+         }
+      }
+
+      long spent = now - start;
+      executedCount += ran;
+      executeNanos += spent;
+      frameCount++;
+      if (spent > maxFrameNanos) {
+         maxFrameNanos = spent;
+      }
+      if (!tasks.isEmpty()) {
+         deferredFrameCount++;
+      }
+      // show what ran, and keep draining in the next frame
+      dspRenderer.markNeedDraw();
+   }
+
+   /**
+    * Set the time per frame after which execute stops running tasks.
+    * @param millis budget in milliseconds, 0 to run all queued tasks
+    */
+   public void setFrameBudgetMillis(double millis) {
+      budgetNanos = (millis > 0) ? (long) (millis * 1.0e6) : 0;
+   }
+
+   public double getFrameBudgetMillis() {
+      return budgetNanos / 1.0e6;
+   }
+
+   public boolean isEmpty() {
+      return tasks.isEmpty();
+   }
+
+   /** number of tasks waiting to run */
+   public int size() {
+      return depth.get();
+   }
+
+   public void clear() {
+      while (tasks.poll() != null) {
+         depth.decrementAndGet();
+      }
+   }
+
+   /** largest queue depth seen at the start of a frame */
+   public int getMaxDepth() {
+      return maxDepth;
+   }
+
+   public long getExecutedCount() {
+      return executedCount;
+   }
+
+   /** total time spent running tasks */
+   public double getExecuteMillis() {
+      return executeNanos / 1.0e6;
+   }
+
+   /** longest time spent running tasks in one frame */
+   public double getMaxFrameMillis() {
+      return maxFrameNanos / 1.0e6;
+   }
+
+   /** frames in which tasks ran */
+   public long getFrameCount() {
+      return frameCount;
+   }
+
+   /** frames that left tasks for the next frame */
+   public long getDeferredFrameCount() {
+      return deferredFrameCount;
+   }
+
+   public void resetStatistics() {
+      maxDepth = 0;
+      executedCount = 0;
+      executeNanos = 0;
+      maxFrameNanos = 0;
+      frameCount = 0;
+      deferredFrameCount = 0;
+   }
+}
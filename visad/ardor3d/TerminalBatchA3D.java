@@ -0,0 +1,323 @@
+//
+// TerminalBatchA3D.java
+//
+
+/*
+VisAD system for interactive analysis and visualization of numerical
+data.  Copyright (C) 1996 - 2017 Bill Hibbard, Curtis Rueden, Tom
+Rink, Dave Glowacki, Steve Emmerson, Tom Whittaker, Don Murray, and
+Tommy Jasmin.
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Library General Public
+License as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Library General Public License for more details.
+
+You should have received a copy of the GNU Library General Public
+License along with this library; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330, Boston,
+MA 02111-1307, USA
+*/
+
+package visad.ardor3d;
+
+import visad.*;
+
+import java.util.*;
+import java.rmi.*;
+
+/**
+   TerminalBatchA3D draws the Real and Tuple data of a terminal LEGAL
+   transform, accumulated by ShadowRealTypeA3D and ShadowTupleTypeA3D,
+   as one point array plus one array per kind of shape.<P>
+
+   Each ScalarMap scales the values of all samples in one scaleValues
+   call.  When the display values go to the Cartesian axes, colors,
+   Alpha and Shape only, the geometry is built directly; otherwise
+   each sample goes through terminalTupleOrScalar.<P>
+
+   Animation frames are built by recurseFrame, which is never followed
+   by postProcess and may run for several frames at once, so samples
+   under a frame are not accumulated but drawn in doTransform.<P>
+*/
+class TerminalBatchA3D {
+
+  /** display scalars the batched geometry handles, in index order */
+  static final DisplayRealType[] TARGETS =
+    {Display.XAxis, Display.YAxis, Display.ZAxis, Display.Red, Display.Green,
+     Display.Blue, Display.Alpha, Display.Shape};
+
+  static final int ALPHA = 6;
+  static final int SHAPE = 7;
+
+  /** set while this thread transforms one animation frame; frame
+      builds are never followed by postProcess, so their terminal
+      samples are drawn in doTransform as before */
+  private static final ThreadLocal<Boolean> frameBuild = new ThreadLocal<Boolean>();
+
+  private TerminalBatchA3D() {
+  }
+
+  /** true if terminal samples may be deferred to postProcess */
+  static boolean isDeferred() {
+    return frameBuild.get() == null;
+  }
+
+  /** start a frame build on this thread; return true if one was already
+      in progress, to be passed to endFrame */
+  static boolean beginFrame() {
+    boolean nested = (frameBuild.get() != null);
+    frameBuild.set(Boolean.TRUE);
+    return nested;
+  }
+
+  static void endFrame(boolean nested) {
+    if (!nested) {
+      frameBuild.remove();
+    }
+  }
+
+  /** one Real or Tuple of a terminal LEGAL transform */
+  static final class Sample {
+    final RealType[] types;
+    final float[] values;
+    final float[] value_array;
+    final float[] default_values;
+    final DataRenderer renderer;
+
+    Sample(RealType[] types, float[] values, float[] value_array,
+           float[] default_values, DataRenderer renderer) {
+      this.types = types;
+      this.values = values;
+      this.value_array = value_array;
+      this.default_values = default_values;
+      this.renderer = renderer;
+    }
+  }
+
+  /**
+   * True if data is a Real or a Tuple of only Reals, at any depth.  Other
+   * data, e.g. a Tuple with a Text component, must go through the core
+   * per-sample transform, which draws its text.
+   */
+  static boolean isBatchable(Data data) throws VisADException, RemoteException {
+    if (data instanceof Real) return true;
+    if (!(data instanceof Tuple)) return false;
+    Tuple tuple = (Tuple) data;
+    for (int i=0; i<tuple.getDimension(); i++) {
+      if (!isBatchable(tuple.getComponent(i))) return false;
+    }
+    return true;
+  }
+
+  /**
+   * Return the display value index of each of TARGETS, or -1 where it is
+   * not used, if every used display value maps to one of TARGETS.  Return
+   * null if any maps elsewhere, e.g. to SelectRange, RGB, RGBA or a
+   * non-Cartesian spatial scalar: only the per-sample path draws those.
+   * used[i] is true if display value i is set for some sample.
+   */
+  static int[] batchTargets(DisplayImpl display, boolean[] used) {
+    Vector MapVector = display.getMapVector();
+    int[] valueToMap = display.getValueToMap();
+    int[] index = new int[TARGETS.length];
+    Arrays.fill(index, -1);
+    for (int i=0; i<used.length; i++) {
+      if (!used[i]) continue;
+      DisplayRealType dreal =
+        ((ScalarMap) MapVector.elementAt(valueToMap[i])).getDisplayScalar();
+      int k = Arrays.asList(TARGETS).indexOf(dreal);
+      if (k < 0) return null;
+      index[k] = i;
+    }
+    return index;
+  }
+
+  /** return the sample for data, or null if data has no Real values */
+  static Sample makeSample(Data data, float[] value_array,
+                           float[] default_values, DataRenderer renderer)
+         throws VisADException, RemoteException {
+    Real[] reals = null;
+    if (data instanceof Real) {
+      reals = new Real[] {(Real) data};
+    }
+    else if (data instanceof Tuple) {
+      reals = ((Tuple) data).getRealComponents();
+    }
+    if (reals == null || reals.length == 0) return null;
+
+    RealType[] types = new RealType[reals.length];
+    float[] values = new float[reals.length];
+    for (int i=0; i<reals.length; i++) {
+      types[i] = (RealType) reals[i].getType();
+      Unit unit = types[i].getDefaultUnit();
+      values[i] = (float) ((unit != null) ? reals[i].getValue(unit) :
+                                            reals[i].getValue());
+    }
+    return new Sample(types, values, (float[]) value_array.clone(),
+                      default_values, renderer);
+  }
+
+  /** draw samples, a Vector of Sample, under group */
+  static void render(ShadowTypeA3D shadow, Object group, Vector samples)
+         throws VisADException, RemoteException {
+    int n = samples.size();
+    if (n == 0) return;
+
+    DisplayImplA3D display = shadow.display;
+    Vector MapVector = display.getMapVector();
+    int[] valueToMap = display.getValueToMap();
+    int[] valueToScalar = display.getValueToScalar();
+    int valueArrayLength = display.getValueArrayLength();
+    Sample first = (Sample) samples.elementAt(0);
+
+    // this level's values, scaled for all samples at once
+    float[][] display_values = new float[valueArrayLength][];
+    int[] inherited_values = new int[valueArrayLength];
+    for (int c=0; c<first.types.length; c++) {
+      float[] values = new float[n];
+      for (int j=0; j<n; j++) {
+        Sample sample = (Sample) samples.elementAt(j);
+        values[j] = (c < sample.values.length) ? sample.values[c] : Float.NaN;
+      }
+      for (int i=0; i<MapVector.size(); i++) {
+        ScalarMap map = (ScalarMap) MapVector.elementAt(i);
+        int index = map.getValueIndex();
+        if (index >= 0 && index < valueArrayLength &&
+            map.getScalar().equals(first.types[c])) {
+          display_values[index] = map.scaleValues(values);
+        }
+      }
+    }
+    // values passed down by parents
+    for (int i=0; i<valueArrayLength; i++) {
+      if (display_values[i] != null) continue;
+      float[] inherited = null;
+      for (int j=0; j<n; j++) {
+        float v = ((Sample) samples.elementAt(j)).value_array[i];
+        if (v == v) {
+          if (inherited == null) {
+            inherited = new float[n];
+            Arrays.fill(inherited, Float.NaN);
+          }
+          inherited[j] = v;
+        }
+      }
+      if (inherited != null) {
+        display_values[i] = inherited;
+        inherited_values[i] = 1;
+      }
+    }
+
+    boolean[] used = new boolean[valueArrayLength];
+    for (int i=0; i<valueArrayLength; i++) {
+      used[i] = (display_values[i] != null);
+    }
+    int[] index = batchTargets(display, used);
+
+    if (index == null) {
+      for (int j=0; j<n; j++) {
+        Sample sample = (Sample) samples.elementAt(j);
+        float[][] values = new float[valueArrayLength][];
+        for (int i=0; i<valueArrayLength; i++) {
+          if (display_values[i] != null && display_values[i][j] == display_values[i][j]) {
+            values[i] = new float[] {display_values[i][j]};
+          }
+        }
+        shadow.terminalTupleOrScalar(group, values, null, null, valueArrayLength,
+            valueToScalar, sample.default_values, inherited_values, sample.renderer);
+      }
+      return;
+    }
+
+    VisADGeometryArray[] shapes = null;
+    float shape_scale = 1.0f;
+    if (index[SHAPE] >= 0) {
+      ShapeControl control = (ShapeControl)
+        ((ScalarMap) MapVector.elementAt(valueToMap[index[SHAPE]])).getControl();
+      shapes = control.getShapes();
+      shape_scale = control.getScale();
+    }
+
+    int nc = (index[ALPHA] >= 0) ? 4 : 3;
+    float[] coordinates = new float[3 * n];
+    byte[] colors = new byte[nc * n];
+    int npoints = 0;
+    List<VisADGeometryArray> placed = new ArrayList<VisADGeometryArray>();
+    float[] xyz = new float[3];
+    byte[] rgba = new byte[nc];
+    for (int j=0; j<n; j++) {
+      Sample sample = (Sample) samples.elementAt(j);
+      boolean missing = false;
+      for (int k=0; k<3 + nc; k++) {
+        float v = (index[k] >= 0) ? display_values[index[k]][j] : Float.NaN;
+        if (v != v) {
+          v = sample.default_values[display.getDisplayScalarIndex(TARGETS[k])];
+        }
+        if (k < 3) {
+          if (v != v) missing = true;
+          xyz[k] = v;
+        }
+        else {
+          v = Math.max(0f, Math.min(1f, (v == v) ? v : 1f));
+          rgba[k - 3] = (byte) Math.round(255f * v);
+        }
+      }
+      if (missing) continue;
+
+      if (shapes != null) {
+        float s = display_values[index[SHAPE]][j];
+        int si = (s == s) ? (int) s : -1;
+        if (si < 0 || si >= shapes.length || shapes[si] == null) continue;
+        VisADGeometryArray shape = placeShape(shapes[si], shape_scale, xyz, rgba);
+        if (shape != null) placed.add(shape);
+        continue;
+      }
+      System.arraycopy(xyz, 0, coordinates, 3 * npoints, 3);
+      System.arraycopy(rgba, 0, colors, nc * npoints, nc);
+      npoints++;
+    }
+
+    GraphicsModeControl mode = shadow.getLink().getGraphicsModeControl();
+    if (npoints > 0) {
+      VisADPointArray points = new VisADPointArray();
+      points.vertexCount = npoints;
+      points.coordinates = Arrays.copyOf(coordinates, 3 * npoints);
+      points.colors = Arrays.copyOf(colors, nc * npoints);
+      shadow.addToGroup(group, points, mode, 1.0f, null);
+    }
+    if (!placed.isEmpty()) {
+      for (VisADGeometryArray array : ShadowTypeA3D.mergeArrays(placed)) {
+        shadow.addToGroup(group, array, mode, 1.0f, null);
+      }
+    }
+  }
+
+  /** a copy of shape scaled and moved to xyz, in rgba unless it has colors */
+  private static VisADGeometryArray placeShape(VisADGeometryArray shape,
+                 float scale, float[] xyz, byte[] rgba) {
+    if (shape.coordinates == null || shape.vertexCount <= 0) return null;
+    VisADGeometryArray copy = (VisADGeometryArray) shape.clone();
+    float[] c = shape.coordinates;
+    float[] p = new float[c.length];
+    for (int i=0; i+2<c.length; i+=3) {
+      p[i] = xyz[0] + scale * c[i];
+      p[i+1] = xyz[1] + scale * c[i+1];
+      p[i+2] = xyz[2] + scale * c[i+2];
+    }
+    copy.coordinates = p;
+    if (shape.colors == null) {
+      byte[] colors = new byte[rgba.length * shape.vertexCount];
+      for (int i=0; i<colors.length; i++) {
+        colors[i] = rgba[i % rgba.length];
+      }
+      copy.colors = colors;
+    }
+    return copy;
+  }
+}
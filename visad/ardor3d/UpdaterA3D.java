@@ -44,13 +44,20 @@ import com.google.common.base.Predicates;
 import java.awt.Component;
 import java.awt.Container;
 import java.awt.Dimension;
+import java.awt.Window;
 import java.awt.event.ComponentAdapter;
 import java.awt.event.ComponentEvent;
+import java.awt.event.HierarchyEvent;
+import java.awt.event.HierarchyListener;
 import java.awt.event.InputEvent;
 import java.awt.event.KeyEvent;
+import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
 import java.util.ArrayList;
 import java.util.Iterator;
+import javax.swing.SwingUtilities;
 import visad.VisADException;
 
 
@@ -75,6 +82,16 @@ public class UpdaterA3D implements Updater {
     
     private final ArrayList<InputTrigger> inputTriggers;
     
+    /* Events already forwarded, one per id and modifiers, moved to each new point
+       rather than made again; only the input thread running the triggers uses them */
+    private final MouseEvent[] mouseEvents = new MouseEvent[16];
+    
+    /* Latest drag or move not yet forwarded, coalesced over one frame; 0 if none */
+    private int pendingId = 0;
+    private int pendingMod;
+    private int pendingX;
+    private int pendingY;
+    
     private double TIMEOUT = 10000;
        
     public UpdaterA3D(Container container, DisplaySettings settings, DisplayRendererA3D dspRenderer, int canvasType) throws VisADException {
@@ -141,6 +158,60 @@ public class UpdaterA3D implements Updater {
                       camera.setFrustumPerspective(camera.getFovY(), r, camera.getFrustumNear(), camera.getFrustumFar());
                    }
                 }
+                dspRenderer.markNeedDraw();
+            }
+
+            @Override
+            public void componentShown(ComponentEvent e) {
+                dspRenderer.markNeedDraw();
+            }
+        });
+        
+        // when idle on demand nothing redraws the canvas after it has been
+        // covered or iconified, so redraw when it shows again
+        final WindowAdapter windowListener = new WindowAdapter() {
+            @Override
+            public void windowDeiconified(WindowEvent e) {
+                dspRenderer.markNeedDraw();
+            }
+
+            @Override
+            public void windowActivated(WindowEvent e) {
+                dspRenderer.markNeedDraw();
+            }
+        };
+        canvas.addHierarchyListener(new HierarchyListener() {
+            Window window = null;
+            @Override
+            public void hierarchyChanged(HierarchyEvent e) {
+                if ((e.getChangeFlags() & HierarchyEvent.SHOWING_CHANGED) != 0 && canvas.isShowing()) {
+                    dspRenderer.markNeedDraw();
+                }
+                Window w = SwingUtilities.getWindowAncestor(canvas);
+                if (w != window) {
+                    if (window != null) {
+                        window.removeWindowListener(windowListener);
+                    }
+                    window = w;
+                    if (window != null) {
+                        window.addWindowListener(windowListener);
+                    }
+                }
+            }
+        });
+        
+        // the canvas under the mouse is drawn first and at its full rate
+        canvas.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseEntered(MouseEvent e) {
+                Ardor3D.setPriorityCanvas(canvas);
+            }
+
+            @Override
+            public void mouseExited(MouseEvent e) {
+                if (Ardor3D.getPriorityCanvas() == canvas) {
+                    Ardor3D.setPriorityCanvas(null);
+                }
             }
         });
         
@@ -148,7 +219,7 @@ public class UpdaterA3D implements Updater {
         
         frameWork.addUpdater(this);
         
-        frameWork.addCanvas((com.ardor3d.framework.Canvas)canvas);
+        Ardor3D.addCanvas((com.ardor3d.framework.Canvas)canvas, dspRenderer);
         
         waitForRenderContext();
         
@@ -330,9 +401,57 @@ public class UpdaterA3D implements Updater {
           mod |= InputEvent.CTRL_MASK;
        }
        
-       Dimension size = canvas.getSize();
+       int x = mState.getX();
+       int y = canvas.getHeight() - mState.getY();
        
-       MouseEvent me = new MouseEvent(canvas, id, 0, mod, mState.getX(), (size.height-mState.getY()), 0, false);
+       if (id == MouseEvent.MOUSE_DRAGGED || id == MouseEvent.MOUSE_MOVED) {
+          // keep only the latest motion; update() forwards it after the triggers
+          if (pendingId != 0 && (pendingId != id || pendingMod != mod)) {
+             flushMouseMotion();
+          }
+          if (pendingId == 0) {
+             // when idle on demand, only a frame runs update() to forward it
+             Ardor3D.requestFrame();
+          }
+          pendingId = id;
+          pendingMod = mod;
+          pendingX = x;
+          pendingY = y;
+          return;
+       }
+       // presses and releases are never dropped, and follow the motion before them
+       flushMouseMotion();
+       dispatchToMouseHelper(id, mod, x, y);
+    }
+    
+    /* Forward the motion held back by forwardToMouseHelper, if any */
+    private void flushMouseMotion() {
+       if (pendingId == 0 || canvas == null) {
+          pendingId = 0;
+          return;
+       }
+       int id = pendingId;
+       pendingId = 0;
+       dispatchToMouseHelper(id, pendingMod, pendingX, pendingY);
+    }
+    
+    private void dispatchToMouseHelper(int id, int mod, int x, int y) {
+       MouseEvent me = null;
+       for (int i = 0; i < mouseEvents.length && mouseEvents[i] != null; i++) {
+          MouseEvent e = mouseEvents[i];
+          if (e.getID() == id && e.getModifiers() == mod && e.getSource() == canvas) {
+             me = e;
+             break;
+          }
+       }
+       if (me == null) {
+          me = new MouseEvent(canvas, id, 0, mod, x, y, 0, false);
+          System.arraycopy(mouseEvents, 0, mouseEvents, 1, mouseEvents.length - 1);
+          mouseEvents[0] = me;
+       }
+       else {
+          me.translatePoint(x - me.getX(), y - me.getY());
+       }
        dspRenderer.getMouseBehavior().getMouseHelper().processEvent(me);
     }
     
@@ -356,7 +475,7 @@ public class UpdaterA3D implements Updater {
     }
     
     public void removeCanvas() {
-       frameWork.removeCanvas((com.ardor3d.framework.Canvas)canvas);
+       Ardor3D.removeCanvas((com.ardor3d.framework.Canvas)canvas);
        canvas = null;
     }
     
@@ -412,6 +531,8 @@ public class UpdaterA3D implements Updater {
     @Override
     public void update(ReadOnlyTimer rot) {
        logicalLayer.checkTriggers(rot.getTimePerFrame());
+       // one projection change or drag_direct per frame, however many moves arrived
+       flushMouseMotion();
        root.updateGeometricState(rot.getTimePerFrame(), false);
     }    
 
@@ -447,7 +568,7 @@ public class UpdaterA3D implements Updater {
           
           //deRegisterInput, how to do this?
           
-          frameWork.removeCanvas((com.ardor3d.framework.Canvas)canvas);
+          Ardor3D.removeCanvas((com.ardor3d.framework.Canvas)canvas);
           frameWork.removeUpdater(this);
        }
        catch (Exception e) {